@@ -3,6 +3,7 @@ package com.pinealpha.arc;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 /**
  * Main entry point for the Arc static site generator.
@@ -11,18 +12,28 @@ import java.nio.file.Paths;
 public class Arc {
     private final FileProcessor fileProcessor;
     private final PageProcessor pageProcessor;
+    private final TemplateEngine templateEngine;
     
     private final Path currentDir;
     private final Path appDir;
     private final Path siteDir;
+    // Set to build into a staging directory and publish it atomically
+    private SitePublisher publisher;
     
     public Arc() {
+        this(Paths.get(""));
+    }
+    
+    /**
+     * @param currentDir The directory holding app/ and site/
+     */
+    Arc(Path currentDir) {
         this.fileProcessor = new FileProcessor();
         FrontmatterParser frontmatterParser = new FrontmatterParser();
-        TemplateEngine templateEngine = new TemplateEngine();
+        this.templateEngine = new TemplateEngine();
         RssGenerator rssGenerator = new RssGenerator(fileProcessor);
         this.pageProcessor = new PageProcessor(frontmatterParser, fileProcessor, templateEngine, rssGenerator);
-        this.currentDir = Paths.get("");
+        this.currentDir = currentDir;
         this.appDir = currentDir.resolve(Constants.APP_DIR);
         this.siteDir = currentDir.resolve(Constants.SITE_DIR);
     }
@@ -37,9 +48,28 @@ public class Arc {
         }
 
         Arc arc = new Arc();
+        List<String> options = List.of(args);
+        if (options.contains("--profile")) {
+            arc.templateEngine.enableProfiling();
+        }
+        if (options.contains("--parallel")) {
+            arc.pageProcessor.setThreads(Runtime.getRuntime().availableProcessors());
+        }
+        if (options.contains("--clean")) {
+            arc.pageProcessor.setCleanBuild(true);
+        }
+        if (options.contains("--streaming")) {
+            arc.pageProcessor.setStreaming(true);
+        }
+        if (options.contains("--link-assets")) {
+            arc.fileProcessor.setLinkFiles(true);
+        }
+        if (options.contains("--atomic")) {
+            arc.enableAtomicPublishing();
+        }
         
         // Check for watch mode
-        boolean watchMode = args.length > 0 && "--watch".equals(args[0]);
+        boolean watchMode = options.contains("--watch");
         
         if (watchMode) {
             arc.runWatchMode();
@@ -55,6 +85,19 @@ public class Arc {
             Usage:
               arc            Generate the site from ./app into ./site
               arc --watch    Generate, then watch ./app and rebuild on changes
+              arc --profile  Print where template rendering time went after each build
+                             (can be combined with --watch)
+              arc --parallel Process and render content on all cores
+                             (can be combined with the other options)
+              arc --clean    Render every page, ignoring the build cache in .arc-cache/
+              arc --streaming
+                             Build in bounded memory, dropping each page's markdown
+                             once it is written (for very large sites)
+              arc --link-assets
+                             Hard-link assets and root files into ./site instead of
+                             copying them (don't edit them in place in ./site)
+              arc --atomic   Build into a staging directory and switch ./site (a
+                             symbolic link) over to it once the build is complete
               arc --help     Show this help
 
             Content:
@@ -68,9 +111,18 @@ public class Arc {
 
               Static files in app/root/ are copied verbatim to the site root
               (robots.txt, favicon.ico, CNAME, etc.), preserving subdirectories.
+              Assets and root files whose size and modification time match the
+              copy in ./site are not copied again.
             """);
     }
     
+    /**
+     * Build into a staging directory next to site/ and publish it atomically, see {@link SitePublisher}
+     */
+    public void enableAtomicPublishing() {
+        this.publisher = new SitePublisher(siteDir);
+    }
+    
     /**
      * Run in watch mode - monitors files and rebuilds on changes
      */
@@ -95,12 +147,62 @@ public class Arc {
     
     public void generate() throws IOException {
         System.out.println("-------- STARTING ARC GENERATE() --------");
+        if (templateEngine.getProfiler() != null) {
+            templateEngine.getProfiler().reset();
+        }
         
-        fileProcessor.createDirectory(siteDir);
-        fileProcessor.copyAssets(appDir, siteDir);
-        fileProcessor.copyRootFiles(appDir, siteDir);
-        pageProcessor.processAllContent(appDir, siteDir);
+        // A staged build starts from links to the published site and only replaces it when complete
+        Path buildDir = publisher != null ? publisher.stage() : siteDir;
+        boolean completed = false;
+        try {
+            fileProcessor.createDirectory(buildDir);
+            fileProcessor.copyAssets(appDir, buildDir);
+            fileProcessor.copyRootFiles(appDir, buildDir);
+            pageProcessor.processAllContent(appDir, buildDir);
+            
+            // Outputs of the previous build that this one didn't produce, e.g. pages of deleted posts
+            int removed = OutputManifest.load(BuildCache.directoryFor(appDir), siteDir)
+                .update(buildDir, fileProcessor.takeOutputs());
+            if (removed > 0) {
+                System.out.println("Removed " + removed + " stale files from " + siteDir);
+            }
+            
+            if (publisher != null) {
+                publisher.publish(buildDir);
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                // The next build's manifest must only list what that build produces
+                List<Path> outputs = fileProcessor.takeOutputs();
+                fileProcessor.clearChangedFiles();
+                if (publisher != null) {
+                    // Nothing of the failed build survives
+                    publisher.discard(buildDir);
+                } else {
+                    retainFailedOutputs(outputs);
+                }
+            }
+        }
+        
+        // Profiling may also have been switched on by site.config during the build
+        TemplateProfiler profiler = templateEngine.getProfiler();
+        if (profiler != null) {
+            System.out.print(profiler.report());
+        }
         
         System.out.println("-------- SITE GENERATION COMPLETE --------");
     }
+    
+    /**
+     * Keep track of what a failed build left in site/, so the next build can remove it.
+     * The build's own error is the one reported, so a failure here is only logged.
+     */
+    private void retainFailedOutputs(List<Path> outputs) {
+        try {
+            OutputManifest.load(BuildCache.directoryFor(appDir), siteDir).retain(outputs);
+        } catch (IOException e) {
+            System.err.println("Could not record the outputs of the failed build: " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,129 @@
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Content hashes of the files in app/assets, used for fingerprinted file names
+ * (css/style.css is published as css/style.3f9a1c2b.css). The hashes are kept in
+ * .arc-cache/ by file size and modification time, so a file is only read again
+ * when it has changed.
+ */
+public class AssetFingerprints {
+
+    // Hex digits of the content hash in a fingerprinted name
+    private static final int HASH_LENGTH = 8;
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path cacheFile;
+    private final Map<String, Fingerprint> previous;
+    private final Map<String, Fingerprint> current = new ConcurrentHashMap<>();
+
+    /**
+     * The hash of an asset as of its size and modification time
+     */
+    private record Fingerprint(long size, long modified, String hash) {
+    }
+
+    private AssetFingerprints(Path cacheFile, Map<String, Fingerprint> previous) {
+        this.cacheFile = cacheFile;
+        this.previous = previous;
+    }
+
+    /**
+     * Load the hashes recorded by the previous build; a missing or unreadable file
+     * means every asset is hashed again
+     * @param cacheDir The build cache directory
+     */
+    public static AssetFingerprints load(Path cacheDir) throws IOException {
+        Path cacheFile = cacheDir.resolve(Constants.ASSET_HASHES_FILE);
+        Map<String, Fingerprint> previous = new TreeMap<>();
+        if (Files.exists(cacheFile)) {
+            try {
+                JSONObject cached = new JSONObject(Files.readString(cacheFile));
+                if (cached.optInt("version") == FORMAT_VERSION) {
+                    JSONObject files = cached.getJSONObject("files");
+                    for (String name : files.keySet()) {
+                        JSONObject entry = files.getJSONObject(name);
+                        previous.put(name, new Fingerprint(entry.getLong("size"), entry.getLong("modified"),
+                            entry.getString("hash")));
+                    }
+                }
+            } catch (JSONException e) {
+                System.err.println("Ignoring unreadable asset hashes " + cacheFile + ": " + e.getMessage());
+                previous.clear();
+            }
+        }
+        return new AssetFingerprints(cacheFile, previous);
+    }
+
+    /**
+     * The content hash of an asset, from the previous build if the file is unchanged
+     * @param file The asset
+     * @param name Its path relative to the assets directory
+     * @param attributes Its attributes, read while walking the directory
+     */
+    public String hash(Path file, String name, BasicFileAttributes attributes) throws IOException {
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Fingerprint known = previous.get(name);
+        if (known == null || known.size() != size || known.modified() != modified) {
+            known = new Fingerprint(size, modified, hashContent(file));
+        }
+        current.put(name, known);
+        return known.hash();
+    }
+
+    /**
+     * Record the hashes of the assets seen by this build; removed assets are dropped
+     */
+    public void save() throws IOException {
+        JSONObject files = new JSONObject();
+        for (Map.Entry<String, Fingerprint> entry : new TreeMap<>(current).entrySet()) {
+            files.put(entry.getKey(), new JSONObject()
+                .put("size", entry.getValue().size())
+                .put("modified", entry.getValue().modified())
+                .put("hash", entry.getValue().hash()));
+        }
+        JSONObject cached = new JSONObject()
+            .put("version", FORMAT_VERSION)
+            .put("files", files);
+        BuildCache.writeAtomically(cacheFile, cached.toString(1));
+    }
+
+    /**
+     * Insert a hash before a file name's extension: style.css becomes style.3f9a1c2b.css,
+     * and a name without an extension gets the hash appended
+     */
+    public static String fingerprinted(String fileName, String hash) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0
+            ? fileName.substring(0, dot) + "." + hash + fileName.substring(dot)
+            : fileName + "." + hash;
+    }
+
+    private static String hashContent(Path file) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            return HexFormat.of().formatHex(digest.digest()).substring(0, HASH_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
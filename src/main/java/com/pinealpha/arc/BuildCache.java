@@ -0,0 +1,309 @@
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * On-disk record of what the previous build generated, kept in .arc-cache/ next to
+ * the app directory. For every content file the manifest lists the outputs it
+ * produced and the content hashes of everything they were rendered from: the
+ * markdown source, the template and its includes, and the global variables the
+ * templates read. A page whose inputs all hash the same is not rendered again.
+ * Converted markdown is cached by the content hash of its source file as well.
+ */
+public class BuildCache {
+
+    // Bump when the way outputs are generated changes, so old caches are ignored
+    private static final int FORMAT_VERSION = 2;
+
+    private final Path cacheDir;
+    private final String configHash;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+    private final Map<Path, String> fileHashes = new ConcurrentHashMap<>();
+    private final Map<String, String> globalHashes = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> usedMarkdown = new ConcurrentHashMap<>();
+
+    /**
+     * The outputs generated from one content file and the hashes of its inputs
+     * @param inputs Input name (e.g. "template:post.html") to content hash
+     * @param outputs Output paths relative to the site directory
+     */
+    public record Entry(Map<String, String> inputs, List<String> outputs) {
+    }
+
+    private BuildCache(Path cacheDir, String configHash, Map<String, Entry> previous) {
+        this.cacheDir = cacheDir;
+        this.configHash = configHash;
+        this.previous = previous;
+    }
+
+    /**
+     * Load the manifest of the previous build. A missing or unreadable manifest, or
+     * one written with a different site configuration, makes every page out of date.
+     * @param cacheDir The cache directory
+     * @param configHash Hash of the site configuration of this build
+     * @param clean Ignore the previous build altogether
+     */
+    public static BuildCache load(Path cacheDir, String configHash, boolean clean) throws IOException {
+        Path manifestPath = cacheDir.resolve(Constants.BUILD_MANIFEST_FILE);
+        if (clean || !Files.exists(manifestPath)) {
+            return new BuildCache(cacheDir, configHash, Map.of());
+        }
+
+        Map<String, Entry> entries = new TreeMap<>();
+        try {
+            JSONObject manifest = new JSONObject(Files.readString(manifestPath));
+            if (manifest.optInt("version") != FORMAT_VERSION || !configHash.equals(manifest.optString("config"))) {
+                return new BuildCache(cacheDir, configHash, Map.of());
+            }
+            JSONObject sources = manifest.getJSONObject("sources");
+            for (String source : sources.keySet()) {
+                JSONObject entry = sources.getJSONObject(source);
+                Map<String, String> inputs = new TreeMap<>();
+                JSONObject inputHashes = entry.getJSONObject("inputs");
+                for (String input : inputHashes.keySet()) {
+                    inputs.put(input, inputHashes.getString(input));
+                }
+                List<String> outputs = new ArrayList<>();
+                JSONArray outputPaths = entry.getJSONArray("outputs");
+                for (int i = 0; i < outputPaths.length(); i++) {
+                    outputs.add(outputPaths.getString(i));
+                }
+                entries.put(source, new Entry(inputs, outputs));
+            }
+        } catch (JSONException e) {
+            System.err.println("Ignoring unreadable build cache " + manifestPath + ": " + e.getMessage());
+            return new BuildCache(cacheDir, configHash, Map.of());
+        }
+        return new BuildCache(cacheDir, configHash, entries);
+    }
+
+    /**
+     * The build cache directory of a site: .arc-cache/ next to its app directory
+     */
+    public static Path directoryFor(Path appDir) {
+        return appDir.toAbsolutePath().getParent().resolve(Constants.BUILD_CACHE_DIR);
+    }
+
+    /**
+     * Check whether a content file's outputs were generated from the same inputs
+     * by the previous build and are all still present
+     * @param source The content file, relative to the app directory
+     * @param inputs The hashes of the inputs of this build
+     * @param siteDir The site directory
+     */
+    public boolean isUpToDate(String source, Map<String, String> inputs, Path siteDir) {
+        Entry entry = previous.get(source);
+        if (entry == null || !entry.inputs().equals(inputs)) {
+            return false;
+        }
+        for (String output : entry.outputs()) {
+            if (!Files.exists(siteDir.resolve(output))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keep the previous build's entry for a content file that was not rendered again
+     * @return The outputs of the content file, relative to the site directory
+     */
+    public List<String> keep(String source) {
+        Entry entry = previous.get(source);
+        if (entry == null) {
+            return List.of();
+        }
+        current.put(source, entry);
+        return entry.outputs();
+    }
+
+    /**
+     * Record the inputs and outputs of a content file rendered by this build
+     */
+    public void record(String source, Map<String, String> inputs, List<String> outputs) {
+        current.put(source, new Entry(Map.copyOf(inputs), List.copyOf(outputs)));
+    }
+
+    /**
+     * Get the HTML converted from a content file's markdown by an earlier build, or
+     * convert it now. A hit doesn't need the markdown body at all.
+     * @param source The content file
+     * @param converter Reads and converts the markdown body on a cache miss
+     */
+    public String markdown(Path source, Supplier<String> converter) throws IOException {
+        String hash = hashFile(source);
+        keepMarkdown(hash);
+        Path cached = cacheDir.resolve(Constants.MARKDOWN_CACHE_DIR).resolve(hash + ".html");
+        try {
+            return Files.readString(cached);
+        } catch (NoSuchFileException e) {
+            String html = converter.get();
+            writeAtomically(cached, html);
+            return html;
+        }
+    }
+
+    /**
+     * Keep the converted markdown of a content file whose page was not rendered
+     * again, so a later build still finds it
+     */
+    public void keepMarkdown(Path source) throws IOException {
+        keepMarkdown(hashFile(source));
+    }
+
+    private void keepMarkdown(String hash) {
+        usedMarkdown.put(hash, Boolean.TRUE);
+    }
+
+    /**
+     * Write the manifest of this build and drop converted markdown it no longer uses
+     */
+    public void save() throws IOException {
+        JSONObject sources = new JSONObject();
+        for (Map.Entry<String, Entry> entry : new TreeMap<>(current).entrySet()) {
+            sources.put(entry.getKey(), new JSONObject()
+                .put("inputs", new JSONObject(entry.getValue().inputs()))
+                .put("outputs", new JSONArray(entry.getValue().outputs())));
+        }
+        JSONObject manifest = new JSONObject()
+            .put("version", FORMAT_VERSION)
+            .put("config", configHash)
+            .put("sources", sources);
+        writeAtomically(cacheDir.resolve(Constants.BUILD_MANIFEST_FILE), manifest.toString(1));
+
+        Path markdownDir = cacheDir.resolve(Constants.MARKDOWN_CACHE_DIR);
+        if (Files.isDirectory(markdownDir)) {
+            try (Stream<Path> files = Files.list(markdownDir)) {
+                for (Path file : files.toList()) {
+                    String name = file.getFileName().toString();
+                    if (!usedMarkdown.containsKey(name.substring(0, name.length() - ".html".length()))) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Content hash of a file, computed at most once per build
+     */
+    public String hashFile(Path file) throws IOException {
+        String hash = fileHashes.get(file);
+        if (hash == null) {
+            hash = hash(Files.readAllBytes(file));
+            fileHashes.put(file, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Content hash of a global variable, computed at most once per build.
+     * Globals don't change while pages are rendered.
+     * @param name The variable name
+     * @param present Whether the global is registered at all
+     * @param value Its value
+     */
+    public String hashGlobal(String name, boolean present, Object value) {
+        return globalHashes.computeIfAbsent(name, key -> {
+            try {
+                return present ? hashValue(value) : "absent";
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Content hash of a string
+     */
+    public static String hash(String text) {
+        return hash(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Content hash of a template value (string, list or map). Map keys are hashed
+     * in sorted order so the hash doesn't depend on iteration order. The body of a
+     * content item is hashed through its source file, so hashing doesn't load it;
+     * data file values are hashed through their JSON text for the same reason.
+     */
+    public String hashValue(Object value) throws IOException {
+        StringBuilder canonical = new StringBuilder();
+        appendCanonical(value, canonical);
+        return hash(canonical.toString());
+    }
+
+    private void appendCanonical(Object value, StringBuilder out) throws IOException {
+        if (value instanceof ContentMetadata item) {
+            out.append('<');
+            appendString(hashFile(item.source()), out);
+            appendCanonical(item.fields(), out);
+            out.append('>');
+        } else if (value instanceof JsonData.Node node) {
+            out.append('j');
+            appendString(node.digest(), out);
+        } else if (value instanceof Map<?, ?> map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            map.forEach((key, item) -> sorted.put(String.valueOf(key), item));
+            out.append('{');
+            for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+                appendString(entry.getKey(), out);
+                appendCanonical(entry.getValue(), out);
+            }
+            out.append('}');
+        } else if (value instanceof List<?> list) {
+            out.append('[');
+            for (Object item : list) {
+                appendCanonical(item, out);
+            }
+            out.append(']');
+        } else if (value == null) {
+            out.append('n');
+        } else {
+            appendString(value.toString(), out);
+        }
+    }
+
+    // Length-prefixed, so adjacent strings can't run into each other
+    private static void appendString(String text, StringBuilder out) {
+        out.append(text.length()).append(':').append(text);
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static void writeAtomically(Path path, String content) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(temp, content);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.pinealpha.arc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Evaluates the where and sort clauses of {% for %} loops over one collection.
+ * Global collections don't change during a build, so the template engine keeps one
+ * query per global collection: equality filters go through a per-field index from
+ * value to items, and every distinct where/sort/limit combination is selected once
+ * and then reused by all pages. A sort with a limit only selects the first
+ * offset + limit items instead of sorting the whole collection. Keyed lookups
+ * ({{ authors[post.author] }}) go through the same per-field index.
+ */
+public class CollectionQuery {
+
+    private final List<?> items;
+    private final Map<List<String>, Map<String, List<Object>>> valueIndexes = new ConcurrentHashMap<>();
+    private final Map<Selection, List<?>> selections = new ConcurrentHashMap<>();
+
+    /**
+     * A loop's where and sort clauses and the number of leading items it needs (-1 for all)
+     */
+    private record Selection(Template.Condition where, Template.Sort sort, int count) {
+    }
+
+    /**
+     * @param items The collection, which must not change while the query is in use
+     */
+    public CollectionQuery(List<?> items) {
+        this.items = items;
+    }
+
+    /**
+     * The items a loop renders, selected once per distinct where/sort/limit and then reused
+     */
+    public List<?> select(Template.For loop) {
+        Selection selection = new Selection(loop.where(), loop.sort(), count(loop));
+        List<?> selected = selections.get(selection);
+        if (selected == null) {
+            selected = order(filterIndexed(loop.where()), loop.sort(), selection.count());
+            selections.putIfAbsent(selection, selected);
+        }
+        return TemplateScope.slice(selected, loop.offset(), loop.limit());
+    }
+
+    /**
+     * The items a loop renders from a collection that is only queried once, such as a
+     * page's own list; nothing is indexed or kept
+     */
+    public static List<?> evaluate(List<?> items, Template.For loop) {
+        return TemplateScope.slice(order(filter(items, loop.where()), loop.sort(), count(loop)),
+            loop.offset(), loop.limit());
+    }
+
+    /**
+     * The first item whose field has the given value, found through the field's index
+     * @param segments The key field path
+     * @param value The key, compared as text
+     * @return The item, or null if no item has the key
+     */
+    public Object find(List<String> segments, String value) {
+        List<Object> matching = index(segments).get(value);
+        return matching != null ? matching.get(0) : null;
+    }
+
+    /**
+     * The first item of a collection that is only queried once whose field has the given value
+     */
+    public static Object find(List<?> items, List<String> segments, String value) {
+        for (Object item : items) {
+            if (TemplateScope.matches(field(item, segments), value)) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    private static int count(Template.For loop) {
+        return loop.limit() >= 0 ? loop.offset() + loop.limit() : -1;
+    }
+
+    private List<?> filterIndexed(Template.Condition where) {
+        if (where == null || where.expected() == null) {
+            return filter(items, where);
+        }
+        return index(where.segments()).getOrDefault(where.expected(), List.of());
+    }
+
+    /**
+     * The items by the text of a field, in collection order; built once per field
+     */
+    private Map<String, List<Object>> index(List<String> segments) {
+        return valueIndexes.computeIfAbsent(segments, path -> {
+            Map<String, List<Object>> byValue = new HashMap<>();
+            for (Object item : items) {
+                Object value = field(item, path);
+                if (value != null) {
+                    byValue.computeIfAbsent(value.toString(), k -> new ArrayList<>()).add(item);
+                }
+            }
+            return byValue;
+        });
+    }
+
+    private static List<?> filter(List<?> items, Template.Condition where) {
+        if (where == null) {
+            return items;
+        }
+        List<Object> matching = new ArrayList<>();
+        for (Object item : items) {
+            Object value = field(item, where.segments());
+            if (where.expected() != null ? TemplateScope.matches(value, where.expected()) : TemplateScope.isTruthy(value)) {
+                matching.add(item);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Sort items by a field, or select the first count of them in sorted order.
+     * Items with equal keys keep their collection order; items without the field go last.
+     */
+    private static List<?> order(List<?> items, Template.Sort sort, int count) {
+        if (sort == null) {
+            return items;
+        }
+        // Resolve every key once rather than on each comparison
+        SortKey[] keys = new SortKey[items.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new SortKey(items.get(i), field(items.get(i), sort.segments()), i);
+        }
+        Comparator<SortKey> comparator = sortOrder(sort.descending());
+
+        if (count >= 0 && count < keys.length) {
+            // Keep the count best keys in a heap whose head is the worst of them
+            PriorityQueue<SortKey> best = new PriorityQueue<>(count + 1, comparator.reversed());
+            for (SortKey key : keys) {
+                best.add(key);
+                if (best.size() > count) {
+                    best.poll();
+                }
+            }
+            keys = best.toArray(new SortKey[0]);
+        }
+        Arrays.sort(keys, comparator);
+
+        List<Object> sorted = new ArrayList<>(keys.length);
+        for (SortKey key : keys) {
+            sorted.add(key.item());
+        }
+        return sorted;
+    }
+
+    private static Comparator<SortKey> sortOrder(boolean descending) {
+        return (a, b) -> {
+            if (a.value() == null || b.value() == null) {
+                int missing = Boolean.compare(a.value() == null, b.value() == null);
+                return missing != 0 ? missing : Integer.compare(a.position(), b.position());
+            }
+            int order = compareValues(a.value(), b.value());
+            if (descending) {
+                order = -order;
+            }
+            return order != 0 ? order : Integer.compare(a.position(), b.position());
+        };
+    }
+
+    /**
+     * Numbers (from data files) compare numerically, everything else as text;
+     * ISO dates sort chronologically as text
+     */
+    private static int compareValues(Object a, Object b) {
+        if (a instanceof Number x && b instanceof Number y) {
+            return Double.compare(x.doubleValue(), y.doubleValue());
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private static Object field(Object item, List<String> segments) {
+        Object current = item;
+        for (int i = 0; i < segments.size() && current != null; i++) {
+            current = TemplateScope.property(current, segments.get(i));
+        }
+        return current;
+    }
+
+    private record SortKey(Object item, Object value, int position) {
+    }
+}
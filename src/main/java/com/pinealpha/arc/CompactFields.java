@@ -0,0 +1,148 @@
+package com.pinealpha.arc;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable string map stored as an array of values over a shared key table.
+ * Content items with the same set of frontmatter keys share one shape, so each item
+ * only holds its values: the key strings and the key-to-slot lookup exist once per
+ * shape rather than once per item, and there are no per-entry hash map nodes.
+ * Shapes are shared through a {@link Shapes} table, which a build owns, so key sets
+ * that are no longer used don't outlive the builds that saw them.
+ */
+public final class CompactFields extends AbstractMap<String, String> {
+
+    private final Shape shape;
+    private final String[] values;
+    private Set<Entry<String, String>> entrySet;
+
+    private CompactFields(Shape shape, String[] values) {
+        this.shape = shape;
+        this.values = values;
+    }
+
+    /**
+     * Copy a map into compact storage, with a key table of its own
+     * @param fields The fields; a map that is already compact is returned as-is
+     */
+    public static CompactFields of(Map<String, String> fields) {
+        return of(fields, null);
+    }
+
+    /**
+     * Copy a map into compact storage, sharing the key table of earlier maps with the same keys
+     * @param fields The fields; a map that is already compact is returned as-is
+     * @param shapes The key tables to share, or null for a table of the map's own
+     */
+    public static CompactFields of(Map<String, String> fields, Shapes shapes) {
+        if (fields instanceof CompactFields compact) {
+            return compact;
+        }
+        String[] keys = fields.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        Shape shape = shapes != null ? shapes.shape(List.of(keys)) : new Shape(List.of(keys));
+        String[] values = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = fields.get(shape.keys[i]);
+        }
+        return new CompactFields(shape, values);
+    }
+
+    @Override
+    public String get(Object key) {
+        int slot = shape.slot(key);
+        return slot < 0 ? null : values[slot];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return shape.slot(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < values.length;
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (next >= values.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int slot = next++;
+                            return new SimpleImmutableEntry<>(shape.keys[slot], values[slot]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return values.length;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * The key tables of the maps created with it, one per distinct set of keys
+     */
+    public static final class Shapes {
+        private final Map<List<String>, Shape> shapes = new ConcurrentHashMap<>();
+
+        Shape shape(List<String> keys) {
+            return shapes.computeIfAbsent(keys, Shape::new);
+        }
+
+        /**
+         * The number of distinct key sets seen
+         */
+        public int size() {
+            return shapes.size();
+        }
+    }
+
+    /**
+     * A sorted key table and the slot of each key
+     */
+    private static final class Shape {
+        final String[] keys;
+        final Map<String, Integer> slots;
+
+        Shape(List<String> keys) {
+            this.keys = keys.toArray(new String[0]);
+            this.slots = new HashMap<>();
+            for (int i = 0; i < this.keys.length; i++) {
+                slots.put(this.keys[i], i);
+            }
+        }
+
+        int slot(Object key) {
+            Integer slot = slots.get(key);
+            return slot != null ? slot : -1;
+        }
+    }
+}
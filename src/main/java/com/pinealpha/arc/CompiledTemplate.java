@@ -0,0 +1,18 @@
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A template compiled to a class by {@link TemplateBytecodeCompiler}.
+ * Implementations are generated at runtime as hidden classes.
+ */
+public interface CompiledTemplate {
+
+    /**
+     * Render the template
+     * @param scope The variables visible to the template
+     * @param out Destination for the rendered output
+     */
+    void render(TemplateScope scope, Writer out) throws IOException;
+}
@@ -1,6 +1,7 @@
 package com.pinealpha.arc;
 
 import java.time.format.DateTimeFormatter;
+import java.util.Set;
 
 public class Constants {
 
@@ -12,6 +13,13 @@ public class Constants {
     public static final String DATE_VAR = "date";
     public static final String ACTIVE_NAV_VAR = "active_nav";
     public static final String LATEST_POST_VAR = "latest_post";
+    public static final String PAGINATE_VAR = "paginate";
+    public static final String PER_PAGE_VAR = "per_page";
+    public static final String PAGINATOR_VAR = "paginator";
+    public static final String ARCHIVE_VAR = "archive";
+    public static final String TAGS_VAR = "tags";
+    public static final String CATEGORIES_VAR = "categories";
+    public static final String TERM_VAR = "term";
 
     public static final String PAGE_TYPE = "page";
     public static final String POST_TYPE = "post";
@@ -29,6 +37,11 @@ public class Constants {
     // RSS and Config constants
     public static final String RSS_FEED_FILE = "feed.xml";
     public static final String SITE_CONFIG_FILE = "site.config";
+    public static final String PAGINATION_DIR = "page";
+    public static final int DEFAULT_PER_PAGE = 10;
+    public static final String ARCHIVE_TEMPLATE_CONFIG = "archive_template";
+    public static final String TAG_TEMPLATE_CONFIG = "tag_template";
+    public static final String CATEGORY_TEMPLATE_CONFIG = "category_template";
     
     // RSS Default values
     public static final String DEFAULT_SITE_TITLE = "My Arc Site";
@@ -38,11 +51,61 @@ public class Constants {
     public static final String DEFAULT_SITE_LANGUAGE = "en-us";
     public static final int DEFAULT_RSS_MAX_ITEMS = 10;
     
-    // Template syntax patterns
-    public static final String VARIABLE_PATTERN = "\\{\\{\\s*%s\\s*\\}\\}";
-    public static final String INCLUDE_PATTERN = "\\{%\\s*include\\s+\"([^\"]+)\"\\s*%\\}";
-    public static final String IF_PATTERN = "\\{\\%\\s*if\\s+([^%}]+)\\s*\\%\\}(.*?)(\\{\\%\\s*endif\\s*\\%\\}|$)";
-    public static final String FOR_PATTERN = "\\{\\%\\s*for\\s+(\\w+)\\s+in\\s+(\\w+)(?:\\s+limit\\s+(\\d+))?\\s*\\%\\}(.*?)\\{\\%\\s*endfor\\s*\\%\\}";
+    // Template engine settings; a negative bytecode threshold keeps templates interpreted
+    public static final String TEMPLATE_BYTECODE_CONFIG = "template_bytecode_threshold";
+    public static final int DEFAULT_TEMPLATE_BYTECODE_THRESHOLD = -1;
+    public static final String TEMPLATE_PROFILE_CONFIG = "profile";
+    
+    // Build settings; parallel is true, false or a thread count
+    public static final String PARALLEL_CONFIG = "parallel";
+    public static final String THREADS_CONFIG = "threads";
+    public static final String INCREMENTAL_CONFIG = "incremental";
+    public static final String STREAMING_CONFIG = "streaming";
+    public static final String DATA_KEYS_CONFIG = "data_keys";
+    public static final String FINGERPRINT_ASSETS_CONFIG = "fingerprint_assets";
+    
+    // Content tasks queued ahead per build thread; a full queue holds back the producer
+    public static final int TASKS_PER_THREAD = 4;
+    
+    // Threads copying assets and root files
+    public static final int DEFAULT_COPY_THREADS = 4;
+    
+    // Precompressed .gz copies of text files, written next to them for the web server
+    public static final String GZIP_CONFIG = "gzip";
+    public static final String GZIP_LEVEL_CONFIG = "gzip_level";
+    public static final String GZIP_MIN_SIZE_CONFIG = "gzip_min_size";
+    public static final int DEFAULT_GZIP_LEVEL = 9;
+    public static final int DEFAULT_GZIP_MIN_SIZE = 1024;
+    public static final Set<String> COMPRESSIBLE_EXTENSIONS = Set.of(
+        "html", "xml", "css", "js", "mjs", "json", "svg", "txt", "map");
+    
+    // Build cache, kept next to the app directory
+    public static final String BUILD_CACHE_DIR = ".arc-cache";
+    public static final String BUILD_MANIFEST_FILE = "manifest.json";
+    public static final String MARKDOWN_CACHE_DIR = "markdown";
+    public static final String ASSET_HASHES_FILE = "asset-hashes.json";
+    public static final String OUTPUT_MANIFEST_FILE = "outputs.json";
+    
+    // Published generations of the site when building with --atomic, kept next to the site directory
+    public static final String SITE_GENERATIONS_DIR = ".site-generations";
+    
+    // Fingerprinted assets: the manifest written to the site, and the global templates resolve it through
+    public static final String ASSET_MANIFEST_FILE = "asset-manifest.json";
+    public static final String ASSET_MANIFEST_VAR = "asset_manifest";
+    
+    // Template syntax patterns, matched against the trimmed body of a single {{ ... }} or {% ... %} tag
+    public static final String VARIABLE_PATTERN = "[a-zA-Z0-9_\\-]+(?:\\.[a-zA-Z0-9_\\-]+)*";
+    // Keyed lookup: collection[key.path].field.path
+    public static final String LOOKUP_PATTERN = "(" + VARIABLE_PATTERN + ")\\[\\s*(" + VARIABLE_PATTERN + ")\\s*\\]"
+        + "((?:\\.[a-zA-Z0-9_\\-]+)*)";
+    public static final String ASSET_PATTERN = "asset\\s+\"([^\"]+)\"";
+    public static final String INCLUDE_PATTERN = "include\\s+\"([^\"]+)\"";
+    public static final String IF_PATTERN = "if\\s+([^%}]+)";
+    // Loop clauses: limit N, offset N, where field [== value] and sort field [asc|desc], in any order
+    public static final String FOR_CLAUSE_PATTERN = "(limit|offset)\\s+(\\d+)"
+        + "|where\\s+(\\w+(?:\\.\\w+)*)(?:\\s*==\\s*('[^']*'|\"[^\"]*\"|[^\\s'\"]+))?"
+        + "|sort\\s+(\\w+(?:\\.\\w+)*)(?:\\s+(asc|desc)\\b)?";
+    public static final String FOR_PATTERN = "for\\s+(\\w+)\\s+in\\s+(\\w+(?:\\.\\w+)*)((?:\\s+(?:" + FOR_CLAUSE_PATTERN + "))*)";
     
 
     public static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
@@ -0,0 +1,147 @@
+package com.pinealpha.arc;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Index of all content items by frontmatter type. Each item's date is parsed once,
+ * when it is added, into an epoch day; collections are sorted on that key and the
+ * year/month archives are grouped from it, so neither parses a date again.
+ * List-valued fields such as tags are inverted into term indexes the same way.
+ */
+public class ContentIndex {
+
+    /** Sort key of items without a date; they sort after all dated items */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final Comparator<Entry> NEWEST_FIRST = Comparator.comparingLong(Entry::epochDay).reversed();
+
+    private final Map<String, List<Entry>> entriesByType = new LinkedHashMap<>();
+    private boolean sorted = true;
+
+    /**
+     * An indexed content item
+     * @param metadata The item's template variables
+     * @param epochDay Its date as days since 1970-01-01, or {@link #NO_DATE}
+     */
+    public record Entry(Map<String, String> metadata, long epochDay) {
+    }
+
+    /**
+     * A term of a list-valued field (a tag or category) and the items listing it
+     * @param name The term as first written by the newest item listing it
+     * @param slug The term's file name, see {@link #slug(String)}
+     * @param items The items, newest first
+     */
+    public record Term(String name, String slug, List<Map<String, String>> items) {
+    }
+
+    /**
+     * The sort key of an ISO date (2025-05-28)
+     * @param isoDate The date, or null
+     * @return Days since 1970-01-01, or {@link #NO_DATE} for a missing date
+     */
+    public static long dateKey(String isoDate) {
+        return isoDate == null ? NO_DATE : LocalDate.parse(isoDate).toEpochDay();
+    }
+
+    /**
+     * Add an item to the collection of its type
+     * @param type The frontmatter type
+     * @param metadata The item's template variables
+     * @param epochDay The item's date key, see {@link #dateKey(String)}
+     */
+    public void add(String type, Map<String, String> metadata, long epochDay) {
+        entriesByType.computeIfAbsent(type, k -> new ArrayList<>()).add(new Entry(metadata, epochDay));
+        sorted = false;
+    }
+
+    /**
+     * All collections by type, in the order types were first seen. Items are
+     * sorted newest first; items with the same date (or none) keep the order
+     * they were added in.
+     */
+    public Map<String, List<Map<String, String>>> collections() {
+        sort();
+        Map<String, List<Map<String, String>>> collections = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Entry>> entry : entriesByType.entrySet()) {
+            List<Map<String, String>> items = new ArrayList<>(entry.getValue().size());
+            for (Entry item : entry.getValue()) {
+                items.add(item.metadata());
+            }
+            collections.put(entry.getKey(), items);
+        }
+        return collections;
+    }
+
+    /**
+     * The dated items of a type grouped by month, newest month first; undated
+     * items are left out
+     * @param type The frontmatter type
+     */
+    public Map<YearMonth, List<Map<String, String>>> months(String type) {
+        sort();
+        Map<YearMonth, List<Map<String, String>>> months = new LinkedHashMap<>();
+        for (Entry item : entriesByType.getOrDefault(type, List.of())) {
+            if (item.epochDay() == NO_DATE) {
+                continue;
+            }
+            YearMonth month = YearMonth.from(LocalDate.ofEpochDay(item.epochDay()));
+            months.computeIfAbsent(month, k -> new ArrayList<>()).add(item.metadata());
+        }
+        return months;
+    }
+
+    /**
+     * Invert a list-valued field (e.g. tags) over all items in one pass. Terms that
+     * only differ in case or punctuation share a slug and are merged.
+     * @param field The frontmatter field, see {@link FrontmatterParser#parseList(String)}
+     * @return The terms in slug order
+     */
+    public List<Term> terms(String field) {
+        sort();
+        List<Entry> newestFirst = new ArrayList<>();
+        entriesByType.values().forEach(newestFirst::addAll);
+        newestFirst.sort(NEWEST_FIRST);
+
+        Map<String, Term> terms = new TreeMap<>();
+        for (Entry item : newestFirst) {
+            for (String name : FrontmatterParser.parseList(item.metadata().get(field))) {
+                String slug = slug(name);
+                if (slug.isEmpty()) {
+                    continue;
+                }
+                Term term = terms.computeIfAbsent(slug, k -> new Term(name, slug, new ArrayList<>()));
+                // Two spellings of a term in the same item list it once
+                List<Map<String, String>> items = term.items();
+                if (items.isEmpty() || items.get(items.size() - 1) != item.metadata()) {
+                    items.add(item.metadata());
+                }
+            }
+        }
+        return new ArrayList<>(terms.values());
+    }
+
+    /**
+     * The file name of a term: lower case letters and digits, other characters
+     * collapsed into single hyphens ("Static Sites!" becomes "static-sites")
+     */
+    public static String slug(String term) {
+        return term.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", "-").replaceAll("^-|-$", "");
+    }
+
+    private void sort() {
+        if (!sorted) {
+            // List.sort is stable, so equal dates keep their insertion order
+            entriesByType.values().forEach(entries -> entries.sort(NEWEST_FIRST));
+            sorted = true;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * The template variables of a content file. Frontmatter and computed fields are
+ * read when the file is discovered; the markdown body ({@code content}) and its
+ * HTML ({@code rendered_content}) are only loaded when they are looked up, e.g. when
+ * the page itself is generated or a template reads the rendered content of a listed
+ * item. Loaded bodies are softly referenced, so a build's heap scales with the size
+ * of the metadata rather than with the total text of the site. Streaming builds
+ * don't keep them at all: every lookup loads the body again.
+ * The fields are held as {@link CompactFields}, so items with the same frontmatter
+ * keys share one key table, and nothing else is allocated until it is used.
+ * The map is unmodifiable.
+ */
+public class ContentMetadata extends AbstractMap<String, String> {
+
+    public static final String CONTENT_KEY = "content";
+    public static final String RENDERED_CONTENT_KEY = "rendered_content";
+
+    /**
+     * Loads the body of a content file on demand
+     */
+    public interface BodyLoader {
+
+        /**
+         * Read the markdown body of a content file (without its frontmatter)
+         */
+        String readMarkdown(Path source) throws IOException;
+
+        /**
+         * Convert a content file's markdown body to HTML
+         * @param source The content file
+         * @param markdown Supplies the markdown body, if the HTML isn't cached
+         */
+        String render(Path source, Supplier<String> markdown) throws IOException;
+    }
+
+    private final Path source;
+    private final CompactFields fields;
+    private final BodyLoader loader;
+    private final boolean retainBodies;
+    private Set<Entry<String, String>> entrySet;
+    private volatile SoftReference<String> markdown;
+    private volatile SoftReference<String> html;
+
+    /**
+     * @param source The content file
+     * @param fields Frontmatter and computed fields; content and rendered_content are added lazily
+     * @param loader Loads the body when it is first looked up
+     */
+    public ContentMetadata(Path source, Map<String, String> fields, BodyLoader loader) {
+        this(source, fields, loader, true);
+    }
+
+    /**
+     * @param source The content file
+     * @param fields Frontmatter and computed fields; content and rendered_content are added lazily
+     * @param loader Loads the body when it is looked up
+     * @param retainBodies False to load the body on every lookup instead of keeping it
+     */
+    public ContentMetadata(Path source, Map<String, String> fields, BodyLoader loader, boolean retainBodies) {
+        this.source = source;
+        this.fields = CompactFields.of(fields);
+        this.loader = loader;
+        this.retainBodies = retainBodies;
+    }
+
+    /**
+     * The content file these variables were read from
+     */
+    public Path source() {
+        return source;
+    }
+
+    /**
+     * The variables read with the frontmatter, without the lazily loaded body
+     */
+    public Map<String, String> fields() {
+        return fields;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (CONTENT_KEY.equals(key)) {
+            return markdown();
+        }
+        if (RENDERED_CONTENT_KEY.equals(key)) {
+            return renderedContent();
+        }
+        return fields.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return CONTENT_KEY.equals(key) || RENDERED_CONTENT_KEY.equals(key) || fields.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return fields.size() + (fields.containsKey(CONTENT_KEY) ? 0 : 1) + (fields.containsKey(RENDERED_CONTENT_KEY) ? 0 : 1);
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private String markdown() {
+        SoftReference<String> cached = markdown;
+        String value = cached != null ? cached.get() : null;
+        if (value == null) {
+            try {
+                value = loader.readMarkdown(source);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read " + source, e);
+            }
+            if (retainBodies) {
+                markdown = new SoftReference<>(value);
+            }
+        }
+        return value;
+    }
+
+    private String renderedContent() {
+        SoftReference<String> cached = html;
+        String value = cached != null ? cached.get() : null;
+        if (value == null) {
+            try {
+                value = loader.render(source, this::markdown);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to render " + source, e);
+            }
+            if (retainBodies) {
+                html = new SoftReference<>(value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * The frontmatter fields followed by the two body entries, whose values are
+     * loaded when they are read
+     */
+    private class EntrySet extends AbstractSet<Entry<String, String>> {
+        @Override
+        public Iterator<Entry<String, String>> iterator() {
+            Iterator<String> keys = Stream.concat(
+                    fields.keySet().stream().filter(key -> !CONTENT_KEY.equals(key) && !RENDERED_CONTENT_KEY.equals(key)),
+                    Stream.of(CONTENT_KEY, RENDERED_CONTENT_KEY))
+                .iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return keys.hasNext();
+                }
+
+                @Override
+                public Entry<String, String> next() {
+                    String key = keys.next();
+                    return new Entry<>() {
+                        @Override
+                        public String getKey() {
+                            return key;
+                        }
+
+                        @Override
+                        public String getValue() {
+                            return get(key);
+                        }
+
+                        @Override
+                        public String setValue(String value) {
+                            throw new UnsupportedOperationException();
+                        }
+
+                        @Override
+                        public boolean equals(Object other) {
+                            return other instanceof Entry<?, ?> entry
+                                && key.equals(entry.getKey()) && getValue().equals(entry.getValue());
+                        }
+
+                        @Override
+                        public int hashCode() {
+                            return key.hashCode() ^ getValue().hashCode();
+                        }
+                    };
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return ContentMetadata.this.size();
+        }
+    }
+}
@@ -1,16 +1,43 @@
 package com.pinealpha.arc;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+import org.json.JSONObject;
 
 /**
  * Handles file system operations for the Arc static site generator.
  * Responsible for finding files, copying assets, and managing output directories.
  */
 public class FileProcessor {
+
+    private int copyThreads = Constants.DEFAULT_COPY_THREADS;
+    private boolean linkFiles = false;
+    private boolean rewriteUnchanged = false;
+    // Reported once per processor, not once per file
+    private final AtomicBoolean linkFailed = new AtomicBoolean();
+    // Files written or copied, and files found up to date, since the last precompression
+    private final Set<Path> changedFiles = ConcurrentHashMap.newKeySet();
+    private final Set<Path> unchangedFiles = ConcurrentHashMap.newKeySet();
+    // Every file produced or found up to date since the outputs were last taken
+    private final Set<Path> outputs = ConcurrentHashMap.newKeySet();
     
     /**
      * Find all Markdown files in a directory tree
@@ -48,7 +75,8 @@ public class FileProcessor {
     }
     
     /**
-     * Copy assets directory from source to destination
+     * Copy assets directory from source to destination. Only files that are new or
+     * whose size or modification time differ from the copy in the target are copied.
      * @param sourceDir The source assets directory
      * @param targetDir The target assets directory
      */
@@ -60,31 +88,15 @@ public class FileProcessor {
             return;
         }
         
-        Files.walkFileTree(sourceAssets, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) 
-                    throws IOException {
-                Path targetSubDir = targetAssets.resolve(sourceAssets.relativize(dir));
-                Files.createDirectories(targetSubDir);
-                return FileVisitResult.CONTINUE;
-            }
-            
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) 
-                    throws IOException {
-                Path targetFile = targetAssets.resolve(sourceAssets.relativize(file));
-                Files.copy(file, targetFile, StandardCopyOption.REPLACE_EXISTING);
-                return FileVisitResult.CONTINUE;
-            }
-        });
-        
-        System.out.println("Copied assets to: " + targetAssets);
+        int copied = copyChangedFiles(sourceAssets, targetAssets);
+        System.out.println("Copied assets to: " + targetAssets + " (" + copied + " changed)");
     }
 
     /**
      * Copy every file under app/root/ to the site root, preserving subdirectories.
      * Intended for static files that must live at the site root (robots.txt,
-     * favicon.ico, CNAME, etc.). No-op if app/root/ does not exist.
+     * favicon.ico, CNAME, etc.). No-op if app/root/ does not exist. Like assets,
+     * unchanged files are not copied again.
      */
     public void copyRootFiles(Path appDir, Path siteDir) throws IOException {
         Path sourceRoot = appDir.resolve(Constants.ROOT_DIR);
@@ -92,25 +104,313 @@ public class FileProcessor {
             return;
         }
 
-        Files.walkFileTree(sourceRoot, new SimpleFileVisitor<Path>() {
+        int copied = copyChangedFiles(sourceRoot, siteDir);
+        System.out.println("Copied root files from: " + sourceRoot + " (" + copied + " changed)");
+    }
+
+    /**
+     * Use this many threads to copy files
+     * @param copyThreads Number of threads; 1 copies on the calling thread
+     */
+    public void setCopyThreads(int copyThreads) {
+        this.copyThreads = Math.max(1, copyThreads);
+    }
+
+    /**
+     * Hard-link copied files to their source instead of copying their bytes, where the
+     * file system allows it. A link costs the same regardless of file size, but the
+     * site then shares the files with app/, so they must not be edited in place there.
+     * @param linkFiles True to link files, falling back to copying where linking fails
+     */
+    public void setLinkFiles(boolean linkFiles) {
+        this.linkFiles = linkFiles;
+    }
+
+    /**
+     * Replace written files even when their content is unchanged. By default an
+     * output rewritten with the bytes it already has is left as it was, keeping its
+     * modification time (and its .gz, see {@link #precompressChangedFiles}).
+     * @param rewriteUnchanged True to always replace written files
+     */
+    public void setRewriteUnchanged(boolean rewriteUnchanged) {
+        this.rewriteUnchanged = rewriteUnchanged;
+    }
+
+    /**
+     * Copy every asset to a name that includes a hash of its content
+     * (css/style.css to css/style.3f9a1c2b.css), next to the copy under its own name,
+     * and write asset-manifest.json mapping each asset to its fingerprinted URL.
+     * Since the name changes whenever the content does, these files can be served
+     * as immutable. Assets are only read to hash them when they have changed.
+     * @param appDir The application directory
+     * @param siteDir The site output directory
+     * @param fingerprints Hashes of the assets, from the previous build where unchanged
+     * @return The manifest: asset path relative to assets/ to its fingerprinted URL
+     */
+    public Map<String, String> copyFingerprintedAssets(Path appDir, Path siteDir,
+                                                       AssetFingerprints fingerprints) throws IOException {
+        Path sourceAssets = appDir.resolve(Constants.ASSETS_DIR);
+        Path targetAssets = siteDir.resolve(Constants.ASSETS_DIR);
+        Map<String, String> manifest = new TreeMap<>();
+        if (!Files.exists(sourceAssets)) {
+            return manifest;
+        }
+
+        int copied = copyChangedFiles(sourceAssets, targetAssets, (relative, attrs) -> {
+            String name = relative.toString().replace('\\', '/');
+            String hashed = AssetFingerprints.fingerprinted(relative.getFileName().toString(),
+                fingerprints.hash(sourceAssets.resolve(relative), name, attrs));
+            Path target = relative.resolveSibling(hashed);
+            manifest.put(name, "/" + Constants.ASSETS_DIR + "/" + target.toString().replace('\\', '/'));
+            return target;
+        });
+        fingerprints.save();
+
+        // JSONObject doesn't keep key order, so the file is written by hand to stay stable between builds
+        StringBuilder content = new StringBuilder("{");
+        for (Map.Entry<String, String> entry : manifest.entrySet()) {
+            content.append(content.length() > 1 ? ",\n" : "\n")
+                .append("  ").append(JSONObject.quote(entry.getKey()))
+                .append(": ").append(JSONObject.quote(entry.getValue()));
+        }
+        content.append(manifest.isEmpty() ? "}\n" : "\n}\n");
+        writeFile(siteDir.resolve(Constants.ASSET_MANIFEST_FILE), content.toString());
+        System.out.println("Fingerprinted assets: " + manifest.size() + " (" + copied + " changed)");
+        return manifest;
+    }
+
+    /**
+     * Mirror the files of a directory tree into a target directory under their own names
+     */
+    private int copyChangedFiles(Path sourceDir, Path targetDir) throws IOException {
+        return copyChangedFiles(sourceDir, targetDir, (relative, attrs) -> relative);
+    }
+
+    /**
+     * Names the copy of a file, relative to the target directory
+     */
+    @FunctionalInterface
+    private interface TargetName {
+        Path resolve(Path relative, BasicFileAttributes attrs) throws IOException;
+    }
+
+    private record Copy(Path source, Path target) {
+    }
+
+    /**
+     * Mirror the files of a directory tree into a target directory. A target file with
+     * the same size and modification time as its source is taken to be up to date;
+     * copies keep the modification time of their source, and links share it.
+     * @param naming The path of each copy, given the source's path relative to sourceDir
+     * @return The number of files copied or linked
+     */
+    private int copyChangedFiles(Path sourceDir, Path targetDir, TargetName naming) throws IOException {
+        List<Copy> changed = new ArrayList<>();
+        Files.walkFileTree(sourceDir, new SimpleFileVisitor<Path>() {
             @Override
             public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
                     throws IOException {
-                Path targetSubDir = siteDir.resolve(sourceRoot.relativize(dir));
-                Files.createDirectories(targetSubDir);
+                Files.createDirectories(targetDir.resolve(sourceDir.relativize(dir)));
                 return FileVisitResult.CONTINUE;
             }
 
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
                     throws IOException {
-                Path targetFile = siteDir.resolve(sourceRoot.relativize(file));
-                Files.copy(file, targetFile, StandardCopyOption.REPLACE_EXISTING);
+                Path target = targetDir.resolve(naming.resolve(sourceDir.relativize(file), attrs));
+                if (!isUpToDate(attrs, target)) {
+                    changed.add(new Copy(file, target));
+                } else {
+                    keepFile(target);
+                }
                 return FileVisitResult.CONTINUE;
             }
         });
 
-        System.out.println("Copied root files from: " + sourceRoot);
+        // Copies are bound by I/O rather than CPU, so they overlap well even on few cores
+        forEach(changed, copyThreads, "copying " + sourceDir, copy -> copyFile(copy.source(), copy.target()));
+        return changed.size();
+    }
+
+    /**
+     * Write a gzip-compressed sibling (index.html.gz) of every compressible file written or
+     * copied since the last call, so a web server can send it without compressing the file
+     * on every request. Copies that were found up to date are only compressed when their
+     * .gz is missing or stale, and files below the minimum size lose any .gz they had.
+     * @param level Deflate level from 1 (fastest) to 9 (smallest)
+     * @param minSize Files smaller than this many bytes are not compressed
+     * @param threads Number of threads to compress on
+     * @return The number of files compressed
+     */
+    public int precompressChangedFiles(int level, int minSize, int threads) throws IOException {
+        List<Path> compress = new ArrayList<>();
+        for (Path file : takeChangedFiles()) {
+            // A file may be gone again if a failed build left it behind
+            if (isCompressible(file) && Files.exists(file)) {
+                if (Files.size(file) >= minSize) {
+                    compress.add(file);
+                } else {
+                    Files.deleteIfExists(gzipSibling(file));
+                }
+            }
+        }
+        for (Path file : takeUnchangedFiles()) {
+            if (isCompressible(file) && Files.exists(file) && Files.size(file) >= minSize) {
+                if (hasCurrentGzip(file)) {
+                    outputs.add(gzipSibling(file));
+                } else {
+                    compress.add(file);
+                }
+            }
+        }
+
+        // Unlike copying, compression is bound by CPU
+        forEach(compress, threads, "compressing files", file -> gzip(file, level));
+        return compress.size();
+    }
+
+    /**
+     * Record a file that a build would have written but found up to date, such as the
+     * page of a content file the build cache skipped
+     */
+    public void keepFile(Path file) {
+        unchangedFiles.add(file);
+        outputs.add(file);
+    }
+
+    /**
+     * The files written, copied or kept since the last call, for the build's {@link OutputManifest}
+     */
+    public List<Path> takeOutputs() {
+        List<Path> files = new ArrayList<>(outputs);
+        outputs.removeAll(files);
+        return files;
+    }
+
+    /**
+     * Forget the files written since the last precompression, for builds that don't compress
+     */
+    public void clearChangedFiles() {
+        takeChangedFiles();
+        takeUnchangedFiles();
+    }
+
+    private List<Path> takeChangedFiles() {
+        List<Path> files = new ArrayList<>(changedFiles);
+        changedFiles.removeAll(files);
+        return files;
+    }
+
+    private List<Path> takeUnchangedFiles() {
+        List<Path> files = new ArrayList<>(unchangedFiles);
+        unchangedFiles.removeAll(files);
+        return files;
+    }
+
+    private boolean isCompressible(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && Constants.COMPRESSIBLE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase());
+    }
+
+    private boolean hasCurrentGzip(Path file) throws IOException {
+        Path gzip = gzipSibling(file);
+        return Files.exists(gzip) && Files.getLastModifiedTime(gzip).toMillis() == Files.getLastModifiedTime(file).toMillis();
+    }
+
+    private static Path gzipSibling(Path file) {
+        return file.resolveSibling(file.getFileName() + ".gz");
+    }
+
+    /**
+     * Compress a file into its .gz sibling, which takes the file's modification time
+     * so that it can be recognised as up to date
+     */
+    private void gzip(Path file, int level) throws IOException {
+        Path target = gzipSibling(file);
+        replaceFile(target, false, stream -> {
+            try (OutputStream out = new GZIPOutputStream(stream) {
+                    {
+                        def.setLevel(level);
+                    }
+                }) {
+                Files.copy(file, out);
+            }
+        });
+        Files.setLastModifiedTime(target, Files.getLastModifiedTime(file));
+        outputs.add(target);
+    }
+
+    @FunctionalInterface
+    private interface FileTask<T> {
+        void run(T item) throws IOException;
+    }
+
+    /**
+     * Run a task for every item, on up to the given number of threads
+     * @param what What the tasks do, for the message when interrupted
+     */
+    private <T> void forEach(List<T> items, int threads, String what, FileTask<T> task) throws IOException {
+        if (threads <= 1 || items.size() < 2) {
+            for (T item : items) {
+                task.run(item);
+            }
+            return;
+        }
+
+        try (ForkJoinPool pool = new ForkJoinPool(Math.min(threads, items.size()))) {
+            List<Future<Void>> futures = new ArrayList<>(items.size());
+            for (T item : items) {
+                futures.add(pool.submit(() -> {
+                    task.run(item);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while " + what);
+        } catch (ExecutionException e) {
+            switch (e.getCause()) {
+                case IOException io -> throw io;
+                case RuntimeException runtime -> throw runtime;
+                case Error error -> throw error;
+                default -> throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    private boolean isUpToDate(BasicFileAttributes source, Path target) throws IOException {
+        BasicFileAttributes copy;
+        try {
+            copy = Files.readAttributes(target, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        // Compared in milliseconds: not every file system keeps finer times
+        return copy.isRegularFile() && copy.size() == source.size()
+            && copy.lastModifiedTime().toMillis() == source.lastModifiedTime().toMillis();
+    }
+
+    private void copyFile(Path source, Path target) throws IOException {
+        if (linkFiles) {
+            try {
+                Files.deleteIfExists(target);
+                Files.createLink(target, source);
+                changedFiles.add(target);
+                outputs.add(target);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                if (!linkFailed.getAndSet(true)) {
+                    System.err.println("Copying files instead of linking them: " + e);
+                }
+            }
+        }
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        changedFiles.add(target);
+        outputs.add(target);
     }
 
     /**
@@ -150,7 +450,7 @@ public class FileProcessor {
     }
     
     /**
-     * Write content to a file, creating directories as needed
+     * Write content to a file, creating directories as needed; the file is replaced in one step
      * @param outputPath The path to write to
      * @param content The content to write
      */
@@ -159,7 +459,80 @@ public class FileProcessor {
         if (parentDir != null) {
             Files.createDirectories(parentDir);
         }
-        Files.writeString(outputPath, content);
+        recordWrite(outputPath, replaceFile(outputPath, !rewriteUnchanged,
+            out -> out.write(content.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    /**
+     * Stream content to a file, creating directories as needed. The content goes to a
+     * temporary file that replaces the output once it is complete, so readers never
+     * see a half-written page and a failed render leaves the previous file in place.
+     * An output whose content didn't change is left as it was.
+     * @param outputPath The path to write to
+     * @param content Callback that writes the content
+     */
+    public void writeFile(Path outputPath, ContentWriter content) throws IOException {
+        Path parentDir = outputPath.getParent();
+        if (parentDir != null) {
+            Files.createDirectories(parentDir);
+        }
+        recordWrite(outputPath, replaceFile(outputPath, !rewriteUnchanged, out -> {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                content.writeTo(writer);
+            }
+        }));
+    }
+
+    /**
+     * Record a written output. One rewritten with the bytes it already had counts as
+     * kept, so it isn't compressed again; see {@link #precompressChangedFiles}.
+     */
+    private void recordWrite(Path outputPath, boolean replaced) {
+        if (replaced) {
+            changedFiles.add(outputPath);
+            outputs.add(outputPath);
+        } else {
+            keepFile(outputPath);
+        }
+    }
+
+    @FunctionalInterface
+    private interface StreamWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Write a file through a temporary sibling that is then renamed over it in one step.
+     * The temporary file is deleted if writing fails. Since the output is replaced rather
+     * than written into, an output that is a hard link into a published generation (see
+     * {@link SitePublisher}) leaves the published copy untouched.
+     * @param keepIdentical True to leave the target as it is if it already holds the same bytes
+     * @return False if the target was left as it was
+     */
+    private static boolean replaceFile(Path target, boolean keepIdentical, StreamWriter content) throws IOException {
+        // Hidden, and unique per thread: a page is only ever written by one thread at a time
+        Path temp = target.resolveSibling("." + target.getFileName() + "." + Thread.currentThread().threadId() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                content.writeTo(out);
+            }
+            if (keepIdentical && Files.exists(target) && Files.size(target) == Files.size(temp)
+                    && Files.mismatch(temp, target) == -1) {
+                return false;
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Produces file content by writing it to a stream
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        void writeTo(Writer out) throws IOException;
     }
     
     /**
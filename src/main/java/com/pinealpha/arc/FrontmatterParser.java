@@ -1,7 +1,14 @@
 package com.pinealpha.arc;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Parser for YAML-style frontmatter in Markdown files.
@@ -48,10 +55,35 @@ public class FrontmatterParser {
         result.put(key, value);
     }
     
+    /**
+     * Split a list-valued frontmatter field, written either inline
+     * ({@code tags: [java, "static sites"]}) or comma separated ({@code tags: java, static sites}).
+     * Items are trimmed and unquoted; blank and repeated items are dropped.
+     * @param value The field's value, or null
+     * @return The items, in order
+     */
+    public static List<String> parseList(String value) {
+        if (value == null) {
+            return List.of();
+        }
+        String items = value.trim();
+        if (items.startsWith("[") && items.endsWith("]")) {
+            items = items.substring(1, items.length() - 1);
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (String item : items.split(",")) {
+            String trimmed = removeQuotes(item.trim()).trim();
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed);
+            }
+        }
+        return List.copyOf(result);
+    }
+    
     /**
      * Remove surrounding quotes from a value
      */
-    private String removeQuotes(String value) {
+    private static String removeQuotes(String value) {
         if (value.length() >= 2) {
             if ((value.startsWith("'") && value.endsWith("'")) ||
                 (value.startsWith("\"") && value.endsWith("\""))) {
@@ -97,6 +129,41 @@ public class FrontmatterParser {
         );
     }
     
+    /**
+     * Read only the frontmatter of a file. Reading stops at the closing delimiter,
+     * so the body of the file is not loaded; the result is the same as
+     * {@link #extractFrontmatter(String)} on the whole file.
+     * @param file The markdown file
+     * @return The frontmatter content without delimiters, or empty string if none
+     */
+    public String readFrontmatter(Path file) throws IOException {
+        StringBuilder head = new StringBuilder();
+        char[] buffer = new char[4096];
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            boolean opened = false;
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                // Only the newly read characters (and a delimiter split across reads) need searching
+                int from = Math.max(0, head.length() - "\n---\r\n".length());
+                head.append(buffer, 0, read);
+                if (!opened && head.length() >= "---\r\n".length()) {
+                    if (!startsWith(head, "---\n") && !startsWith(head, "---\r\n")) {
+                        return "";
+                    }
+                    opened = true;
+                }
+                if (head.indexOf("\n---\n", from) != -1 || head.indexOf("\n---\r\n", from) != -1) {
+                    break;
+                }
+            }
+        }
+        return extractFrontmatter(head.toString());
+    }
+    
+    private static boolean startsWith(CharSequence text, String prefix) {
+        return text.length() >= prefix.length() && text.subSequence(0, prefix.length()).toString().equals(prefix);
+    }
+    
     /**
      * Extract the content portion (without frontmatter)
      * @param content The full content including frontmatter
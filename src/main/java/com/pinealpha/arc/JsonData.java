@@ -0,0 +1,643 @@
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import org.json.JSONObject;
+
+/**
+ * A JSON data file that is parsed on demand. Large files are memory-mapped and the
+ * whole document is checked once by a scan that validates the syntax without
+ * building any values. Its top-level object or array is then exposed as a Map or
+ * List view over the file's bytes: a view indexes the members of its own object or
+ * array the first time it is read, and values are only decoded when they are looked
+ * up, so a template reading a few fields of a large catalog only materializes those.
+ * Views are unmodifiable and may be read from several threads. Of duplicate keys in
+ * an object, the last one wins.
+ */
+public final class JsonData {
+
+    // Smaller files are read onto the heap; mapping them costs more than it saves
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    // Objects with more keys than this get a hash lookup instead of a linear scan
+    private static final int LINEAR_LOOKUP_KEYS = 8;
+
+    private final Path file;
+    private final ByteBuffer bytes;
+    private final int length;
+
+    /**
+     * A JSON object or array read from a data file
+     */
+    public interface Node {
+
+        /**
+         * Content hash of the node's JSON text, computed once
+         */
+        String digest();
+    }
+
+    private JsonData(Path file, ByteBuffer bytes) {
+        this.file = file;
+        this.bytes = bytes;
+        this.length = bytes.limit();
+    }
+
+    /**
+     * Map and validate a data file
+     * @param file The JSON file; its top-level value must be an object or an array
+     * @return A Map view of a top-level object or a List view of a top-level array
+     * @throws IOException If the file can't be read or isn't valid JSON; the message names the file
+     */
+    public static Node load(Path file) throws IOException {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Data file " + file.getFileName() + " is larger than 2 GB");
+            }
+            bytes = size < MAP_THRESHOLD
+                ? ByteBuffer.wrap(Files.readAllBytes(file))
+                : channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        JsonData data = new JsonData(file, bytes);
+        int root = data.validate();
+        return (Node) data.value(root);
+    }
+
+    // --- validation ---
+
+    /**
+     * Check the syntax of the whole document without decoding anything
+     * @return The offset of the top-level value
+     */
+    private int validate() throws IOException {
+        int start = 0;
+        if (length >= 3 && at(0) == 0xEF && at(1) == 0xBB && at(2) == 0xBF) {
+            start = 3;
+        }
+        int root = skipWhitespace(start);
+        if (at(root) != '{' && at(root) != '[') {
+            throw error(root, "Top-level JSON value must be an object or array");
+        }
+        int end = skipWhitespace(scanValue(root));
+        if (end < length) {
+            throw error(end, "unexpected text after the top-level value");
+        }
+        return root;
+    }
+
+    /**
+     * Scan one value, iteratively so that deep nesting can't overflow the stack
+     * @return The offset just past the value
+     */
+    private int scanValue(int pos) throws IOException {
+        byte[] open = new byte[16];
+        int depth = 0;
+        while (true) {
+            pos = skipWhitespace(pos);
+            int c = at(pos);
+            if (c == '{' || c == '[') {
+                if (depth == open.length) {
+                    open = Arrays.copyOf(open, depth * 2);
+                }
+                open[depth++] = (byte) c;
+                pos = skipWhitespace(pos + 1);
+                if (at(pos) != (c == '{' ? '}' : ']')) {
+                    if (c == '{') {
+                        pos = scanKey(pos);
+                    }
+                    continue;
+                }
+                pos++;
+                depth--;
+            } else if (c == '"') {
+                pos = scanString(pos);
+            } else if (c == 't') {
+                pos = scanLiteral(pos, "true");
+            } else if (c == 'f') {
+                pos = scanLiteral(pos, "false");
+            } else if (c == 'n') {
+                pos = scanLiteral(pos, "null");
+            } else if (c == '-' || isDigit(c)) {
+                pos = scanNumber(pos);
+            } else {
+                throw error(pos, c < 0 ? "unexpected end of file" : "expected a value");
+            }
+
+            // The value is complete: close the containers it ends, then expect the next member
+            while (depth > 0) {
+                pos = skipWhitespace(pos);
+                int next = at(pos);
+                boolean object = open[depth - 1] == '{';
+                if (next == ',') {
+                    pos = skipWhitespace(pos + 1);
+                    if (object) {
+                        pos = scanKey(pos);
+                    }
+                    break;
+                }
+                if (next != (object ? '}' : ']')) {
+                    throw error(pos, object ? "expected ',' or '}'" : "expected ',' or ']'");
+                }
+                pos++;
+                depth--;
+            }
+            if (depth == 0) {
+                return pos;
+            }
+        }
+    }
+
+    private int scanKey(int pos) throws IOException {
+        if (at(pos) != '"') {
+            throw error(pos, "expected a string key");
+        }
+        pos = skipWhitespace(scanString(pos));
+        if (at(pos) != ':') {
+            throw error(pos, "expected ':'");
+        }
+        return pos + 1;
+    }
+
+    private int scanString(int pos) throws IOException {
+        int i = pos + 1;
+        while (true) {
+            int c = at(i);
+            if (c == '"') {
+                return i + 1;
+            }
+            if (c == '\\') {
+                int escape = at(i + 1);
+                if (escape == 'u') {
+                    for (int j = i + 2; j < i + 6; j++) {
+                        if (Character.digit(at(j), 16) < 0) {
+                            throw error(j, "invalid unicode escape");
+                        }
+                    }
+                    i += 6;
+                } else if (escape >= 0 && "\"\\/bfnrt".indexOf(escape) >= 0) {
+                    i += 2;
+                } else {
+                    throw error(i, "invalid escape");
+                }
+            } else if (c < 0) {
+                throw error(pos, "unterminated string");
+            } else if (c < 0x20) {
+                throw error(i, "control character in string");
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private int scanNumber(int pos) throws IOException {
+        int i = pos;
+        if (at(i) == '-') {
+            i++;
+        }
+        if (at(i) == '0') {
+            i++;
+        } else if (isDigit(at(i))) {
+            i = skipDigits(i);
+        } else {
+            throw error(i, "invalid number");
+        }
+        if (at(i) == '.') {
+            if (!isDigit(at(i + 1))) {
+                throw error(i + 1, "invalid number");
+            }
+            i = skipDigits(i + 1);
+        }
+        if (at(i) == 'e' || at(i) == 'E') {
+            i++;
+            if (at(i) == '+' || at(i) == '-') {
+                i++;
+            }
+            if (!isDigit(at(i))) {
+                throw error(i, "invalid number");
+            }
+            i = skipDigits(i);
+        }
+        return i;
+    }
+
+    private int scanLiteral(int pos, String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (at(pos + i) != literal.charAt(i)) {
+                throw error(pos, "expected a value");
+            }
+        }
+        return pos + literal.length();
+    }
+
+    private int skipDigits(int pos) {
+        while (isDigit(at(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private IOException error(int pos, String message) {
+        int line = 1;
+        int column = 1;
+        for (int i = 0; i < pos && i < length; i++) {
+            if (at(i) == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+        return new IOException("Failed to parse data file " + file.getFileName() + ": " + message
+            + " at line " + line + ", column " + column);
+    }
+
+    // --- decoding; the document is known to be valid from here on ---
+
+    private Object value(int pos) {
+        return switch (at(pos)) {
+            case '{' -> new JsonObject(pos);
+            case '[' -> new JsonArray(pos);
+            case '"' -> string(pos, skipString(pos));
+            case 'n' -> null;
+            // Numbers and booleans convert as they always have, e.g. 1.50 stays BigDecimal 1.50
+            default -> JSONObject.stringToValue(ascii(pos, skip(pos)));
+        };
+    }
+
+    /**
+     * The offset just past the value starting at pos
+     */
+    private int skip(int pos) {
+        int c = at(pos);
+        if (c == '"') {
+            return skipString(pos);
+        }
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            int i = pos;
+            while (true) {
+                int b = at(i);
+                if (b == '"') {
+                    i = skipString(i);
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if ((b == '}' || b == ']') && --depth == 0) {
+                    return i + 1;
+                }
+                i++;
+            }
+        }
+        int i = pos;
+        while (i < length && !isDelimiter(at(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private int skipString(int pos) {
+        int i = pos + 1;
+        while (true) {
+            int c = at(i);
+            if (c == '"') {
+                return i + 1;
+            }
+            i += c == '\\' ? 2 : 1;
+        }
+    }
+
+    /**
+     * Decode the string value between pos (the opening quote) and end (past the closing one)
+     */
+    private String string(int pos, int end) {
+        byte[] raw = new byte[end - pos - 2];
+        bytes.get(pos + 1, raw);
+        // Escapes are ASCII and never part of a multi-byte UTF-8 sequence
+        String text = new String(raw, StandardCharsets.UTF_8);
+        int backslash = text.indexOf('\\');
+        if (backslash < 0) {
+            return text;
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        out.append(text, 0, backslash);
+        for (int i = backslash; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            char escape = text.charAt(++i);
+            switch (escape) {
+                case 'b' -> out.append('\b');
+                case 'f' -> out.append('\f');
+                case 'n' -> out.append('\n');
+                case 'r' -> out.append('\r');
+                case 't' -> out.append('\t');
+                case 'u' -> {
+                    out.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                    i += 4;
+                }
+                default -> out.append(escape);
+            }
+        }
+        return out.toString();
+    }
+
+    private String ascii(int pos, int end) {
+        byte[] raw = new byte[end - pos];
+        bytes.get(pos, raw);
+        return new String(raw, StandardCharsets.US_ASCII);
+    }
+
+    private String digest(int pos) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes.slice(pos, skip(pos) - pos));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private int skipWhitespace(int pos) {
+        while (pos < length) {
+            int c = at(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * The byte at pos, or -1 past the end of the file
+     */
+    private int at(int pos) {
+        return pos < length ? bytes.get(pos) & 0xFF : -1;
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isDelimiter(int c) {
+        return c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * The value offsets of an object's or array's members, found on first access.
+     * Nested objects and arrays are kept once created, so their own indexes are
+     * built only once; strings and numbers are decoded on every lookup.
+     */
+    private final class Members {
+        final String[] keys;
+        final int[] offsets;
+        final Map<String, Integer> slots;
+        final Object[] children;
+
+        /**
+         * @param slots The slot of each key, for objects with more than a few keys; else null
+         */
+        Members(String[] keys, int[] offsets, Map<String, Integer> slots) {
+            this.keys = keys;
+            this.offsets = offsets;
+            this.slots = slots;
+            this.children = new Object[offsets.length];
+        }
+
+        int slot(Object key) {
+            if (slots != null) {
+                Integer slot = slots.get(key);
+                return slot != null ? slot : -1;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Object get(int slot) {
+            Object child = children[slot];
+            if (child == null) {
+                child = value(offsets[slot]);
+                if (child instanceof Node) {
+                    // Racing threads create equal views; whichever is stored is as good
+                    children[slot] = child;
+                }
+            }
+            return child;
+        }
+    }
+
+    /**
+     * Index the members of the object or array starting at pos. A repeated key
+     * keeps its first position and takes the last value. Keys are looked up in a
+     * hash map once an object has more than a few of them, and the same map
+     * serves lookups afterwards, so indexing is linear in the member count.
+     */
+    private Members index(int pos, boolean object) {
+        char close = object ? '}' : ']';
+        String[] keys = object ? new String[8] : null;
+        int[] offsets = new int[8];
+        Map<String, Integer> slots = null;
+        int count = 0;
+        pos = skipWhitespace(pos + 1);
+        while (at(pos) != close) {
+            String key = null;
+            if (object) {
+                int keyEnd = skipString(pos);
+                key = string(pos, keyEnd);
+                pos = skipWhitespace(skipWhitespace(keyEnd) + 1);
+            }
+            int slot = -1;
+            if (slots != null) {
+                slot = slots.getOrDefault(key, -1);
+            } else if (object) {
+                slot = linearSlot(keys, count, key);
+            }
+            if (slot >= 0) {
+                offsets[slot] = pos;
+            } else {
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                    if (object) {
+                        keys = Arrays.copyOf(keys, count * 2);
+                    }
+                }
+                if (object) {
+                    keys[count] = key;
+                    if (slots != null) {
+                        slots.put(key, count);
+                    } else if (count == LINEAR_LOOKUP_KEYS) {
+                        slots = new HashMap<>();
+                        for (int i = 0; i <= count; i++) {
+                            slots.put(keys[i], i);
+                        }
+                    }
+                }
+                offsets[count++] = pos;
+            }
+            pos = skipWhitespace(skip(pos));
+            if (at(pos) == ',') {
+                pos = skipWhitespace(pos + 1);
+            }
+        }
+        return new Members(object ? Arrays.copyOf(keys, count) : null, Arrays.copyOf(offsets, count), slots);
+    }
+
+    private static int linearSlot(String[] keys, int count, String key) {
+        for (int i = 0; i < count; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Map view of a JSON object, in document order
+     */
+    public final class JsonObject extends AbstractMap<String, Object> implements Node {
+        private final int start;
+        private volatile Members members;
+        private volatile String digest;
+
+        private JsonObject(int start) {
+            this.start = start;
+        }
+
+        private Members members() {
+            Members indexed = members;
+            if (indexed == null) {
+                indexed = index(start, true);
+                members = indexed;
+            }
+            return indexed;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Members indexed = members();
+            int slot = indexed.slot(key);
+            return slot < 0 ? null : indexed.get(slot);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return members().slot(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return members().offsets.length;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            Members indexed = members();
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < indexed.keys.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next >= indexed.keys.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int slot = next++;
+                            return new SimpleImmutableEntry<>(indexed.keys[slot], indexed.get(slot));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return indexed.keys.length;
+                }
+            };
+        }
+
+        @Override
+        public String digest() {
+            if (digest == null) {
+                digest = JsonData.this.digest(start);
+            }
+            return digest;
+        }
+    }
+
+    /**
+     * List view of a JSON array
+     */
+    public final class JsonArray extends AbstractList<Object> implements RandomAccess, Node {
+        private final int start;
+        private volatile Members members;
+        private volatile String digest;
+
+        private JsonArray(int start) {
+            this.start = start;
+        }
+
+        private Members members() {
+            Members indexed = members;
+            if (indexed == null) {
+                indexed = index(start, false);
+                members = indexed;
+            }
+            return indexed;
+        }
+
+        @Override
+        public Object get(int index) {
+            Members indexed = members();
+            if (index < 0 || index >= indexed.offsets.length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return indexed.get(index);
+        }
+
+        @Override
+        public int size() {
+            return members().offsets.length;
+        }
+
+        @Override
+        public String digest() {
+            if (digest == null) {
+                digest = JsonData.this.digest(start);
+            }
+            return digest;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The files the previous build left in the site directory, kept in .arc-cache/.
+ * After a build, outputs of the previous build that this build didn't produce
+ * (pages of renamed or deleted posts, old fingerprinted assets, and so on) are
+ * deleted, along with directories they leave empty. Files in the site directory
+ * that Arc never wrote are left alone.
+ */
+public class OutputManifest {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path manifestFile;
+    private final Path siteDir;
+    private final Set<String> previous;
+
+    private OutputManifest(Path manifestFile, Path siteDir, Set<String> previous) {
+        this.manifestFile = manifestFile;
+        this.siteDir = siteDir;
+        this.previous = previous;
+    }
+
+    /**
+     * Load the outputs of the previous build. A missing or unreadable manifest, or one
+     * written for a different site directory, means there is nothing to remove.
+     * @param cacheDir The build cache directory
+     * @param siteDir The site directory
+     */
+    public static OutputManifest load(Path cacheDir, Path siteDir) throws IOException {
+        Path manifestFile = cacheDir.resolve(Constants.OUTPUT_MANIFEST_FILE);
+        Path site = siteDir.toAbsolutePath().normalize();
+        Set<String> previous = new TreeSet<>();
+        if (Files.exists(manifestFile)) {
+            try {
+                JSONObject manifest = new JSONObject(Files.readString(manifestFile));
+                if (manifest.optInt("version") == FORMAT_VERSION && site.toString().equals(manifest.optString("site"))) {
+                    JSONArray outputs = manifest.getJSONArray("outputs");
+                    for (int i = 0; i < outputs.length(); i++) {
+                        previous.add(outputs.getString(i));
+                    }
+                }
+            } catch (JSONException e) {
+                System.err.println("Ignoring unreadable output manifest " + manifestFile + ": " + e.getMessage());
+                previous.clear();
+            }
+        }
+        return new OutputManifest(manifestFile, site, previous);
+    }
+
+    /**
+     * Delete the previous build's outputs that are not among this build's, then
+     * record this build's outputs for the next one
+     * @param outputs Every file this build wrote or found up to date
+     * @return The number of files deleted
+     */
+    public int update(Collection<Path> outputs) throws IOException {
+        return update(siteDir, outputs);
+    }
+
+    /**
+     * Like {@link #update(Collection)}, for a build written into a staging directory
+     * that starts out as a copy of the site (see {@link SitePublisher})
+     * @param buildDir The directory the build wrote its outputs to
+     */
+    public int update(Path buildDir, Collection<Path> outputs) throws IOException {
+        Path root = buildDir.toAbsolutePath().normalize();
+        Set<String> current = relativeNames(root, outputs);
+
+        List<Path> stale = new ArrayList<>();
+        for (String output : previous) {
+            Path file = root.resolve(output).normalize();
+            // Never reach outside the build directory, whatever the manifest says
+            if (!current.contains(output) && file.startsWith(root) && !file.equals(root)) {
+                stale.add(file);
+            }
+        }
+        for (Path file : stale) {
+            Files.deleteIfExists(file);
+            removeEmptyDirectories(root, file.getParent());
+        }
+
+        save(current);
+        return stale.size();
+    }
+
+    /**
+     * Record the outputs a failed build wrote into the site directory along with the
+     * previous build's, deleting nothing, so the next build removes those it doesn't
+     * produce again
+     * @param outputs The files the failed build wrote or found up to date
+     */
+    public void retain(Collection<Path> outputs) throws IOException {
+        Set<String> all = new TreeSet<>(previous);
+        all.addAll(relativeNames(siteDir, outputs));
+        save(all);
+    }
+
+    private static Set<String> relativeNames(Path root, Collection<Path> outputs) {
+        Set<String> names = new TreeSet<>();
+        for (Path output : outputs) {
+            Path file = output.toAbsolutePath().normalize();
+            if (file.startsWith(root)) {
+                names.add(root.relativize(file).toString().replace('\\', '/'));
+            }
+        }
+        return names;
+    }
+
+    private void save(Set<String> outputs) throws IOException {
+        JSONObject manifest = new JSONObject()
+            .put("version", FORMAT_VERSION)
+            .put("site", siteDir.toString())
+            .put("outputs", new JSONArray(outputs));
+        BuildCache.writeAtomically(manifestFile, manifest.toString(1));
+    }
+
+    private static void removeEmptyDirectories(Path root, Path dir) throws IOException {
+        while (dir != null && dir.startsWith(root) && !dir.equals(root)) {
+            try {
+                Files.delete(dir);
+            } catch (DirectoryNotEmptyException | NoSuchFileException e) {
+                return;
+            }
+            dir = dir.getParent();
+        }
+    }
+}
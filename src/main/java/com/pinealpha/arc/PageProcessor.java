@@ -1,21 +1,28 @@
 package com.pinealpha.arc;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
 import org.commonmark.Extension;
 import org.commonmark.ext.gfm.strikethrough.StrikethroughExtension;
 import org.commonmark.node.Node;
 import org.commonmark.parser.Parser;
 import org.commonmark.renderer.html.HtmlRenderer;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 /**
  * Processes all content (pages and posts) with unified logic.
@@ -23,10 +30,20 @@ import org.json.JSONObject;
  */
 public class PageProcessor {
     
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("MMMM");
+    private static final DateTimeFormatter MONTH_NUMBER_FORMATTER = DateTimeFormatter.ofPattern("MM");
+    
     private final FrontmatterParser frontmatterParser;
     private final FileProcessor fileProcessor;
     private final TemplateEngine templateEngine;
     private final RssGenerator rssGenerator;
+    private int threads = 1;
+    private boolean cleanBuild = false;
+    private boolean streaming = false;
+    // Frontmatter read by earlier builds of this processor (watch mode), by content file
+    private final Map<Path, DiscoveredFile> discovered = new ConcurrentHashMap<>();
+    // Data files parsed by earlier builds, by file
+    private final Map<Path, DataFile> dataFiles = new ConcurrentHashMap<>();
     
     public PageProcessor(FrontmatterParser frontmatterParser, FileProcessor fileProcessor, 
                         TemplateEngine templateEngine, RssGenerator rssGenerator) {
@@ -37,15 +54,78 @@ public class PageProcessor {
     }
     
     /**
-     * Process all markdown files from both posts and pages directories
+     * Set how many threads read, convert and render content. With more than one
+     * thread the markdown files are processed in parallel, collections are built
+     * once all of them are done, and then pages are rendered in parallel; the
+     * generated site is the same as with a single thread.
+     * A parallel setting in site.config overrides this for the build.
+     * @param threads Number of worker threads, 1 for a sequential build
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+    
+    /**
+     * Ignore the build cache of the previous build, so every page is rendered and
+     * written again, including pages whose content comes out the same
+     * @param cleanBuild True to render every page
+     */
+    public void setCleanBuild(boolean cleanBuild) {
+        this.cleanBuild = cleanBuild;
+        fileProcessor.setRewriteUnchanged(cleanBuild);
+    }
+    
+    /**
+     * Build in bounded memory: markdown bodies are not kept once a page has been
+     * written, and are loaded again (from the build cache's converted markdown when
+     * there is one) if another page lists them. Meant for sites whose text doesn't
+     * fit in the heap; a streaming setting in site.config overrides this for the build.
+     * @param streaming True to drop bodies after use
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+    
+    /**
+     * Process all markdown files from both posts and pages directories.
+     * Pages whose inputs are unchanged since the previous build are not rendered
+     * again (see {@link BuildCache}) unless the build cache is disabled.
      * @param appDir Application directory
      * @param siteDir Output site directory
      */
     public void processAllContent(Path appDir, Path siteDir) throws IOException {
-        List<ContentItem> allContent = new ArrayList<>();
+        // Templates may have been edited since the last build (watch mode)
+        templateEngine.beginBuild();
 
         // Load site configuration if it exists
         Map<String, String> siteConfig = loadSiteConfig(appDir);
+        templateEngine.setBytecodeThreshold(getConfigIntValue(siteConfig,
+            Constants.TEMPLATE_BYTECODE_CONFIG, Constants.DEFAULT_TEMPLATE_BYTECODE_THRESHOLD));
+        if (siteConfig != null && "true".equalsIgnoreCase(siteConfig.get(Constants.TEMPLATE_PROFILE_CONFIG))) {
+            templateEngine.enableProfiling();
+        }
+        BuildCache cache = loadBuildCache(appDir, siteConfig);
+        
+        // Closing the pool waits for in-flight tasks, so a failed build stops writing before it returns
+        int buildThreads = buildThreads(siteConfig);
+        boolean retainBodies = !getConfigBooleanValue(siteConfig, Constants.STREAMING_CONFIG, streaming);
+        try (ForkJoinPool pool = buildThreads > 1 ? new ForkJoinPool(buildThreads) : null) {
+            processAllContent(appDir, siteDir, siteConfig, pool, cache, retainBodies);
+        } catch (UncheckedIOException e) {
+            // Bodies are loaded when templates look them up, so read failures surface unchecked
+            throw e.getCause();
+        }
+        precompress(siteConfig);
+        
+        // Only a build that completed is recorded
+        if (cache != null) {
+            cache.save();
+        }
+    }
+    
+    private void processAllContent(Path appDir, Path siteDir, Map<String, String> siteConfig,
+                                   ForkJoinPool pool, BuildCache cache, boolean retainBodies) throws IOException {
+        List<Path> contentFiles = new ArrayList<>();
 
         // Process posts and pages
         Map<String, String> contentDirs = Map.of(
@@ -57,28 +137,35 @@ public class PageProcessor {
             if (Files.exists(dir)) {
                 List<Path> files = fileProcessor.findMarkdownFiles(dir);
                 System.out.println("Found " + files.size() + " markdown " + entry.getValue() + " to process");
-                for (Path file : files) {
-                    allContent.add(processFile(file, appDir, siteDir));
-                }
+                contentFiles.addAll(files);
             }
         }
+        discovered.keySet().retainAll(new HashSet<>(contentFiles));
+        if (pool != null) {
+            System.out.println("Processing content on " + pool.getParallelism() + " threads");
+        }
+        if (!retainBodies) {
+            System.out.println("Streaming build: markdown bodies are dropped once written");
+        }
+        
+        // Read every file's frontmatter; collections below need all of them.
+        // Items share key tables within the build, so unused ones go with it.
+        ContentMetadata.BodyLoader loader = bodyLoader(cache);
+        CompactFields.Shapes shapes = new CompactFields.Shapes();
+        List<ContentItem> allContent = forEachInOrder(pool, contentFiles,
+            file -> processFile(file, appDir, siteDir, loader, retainBodies, shapes));
 
         // Group content by frontmatter type, sort each group by date desc,
         // and register every group as a global template collection.
-        Map<String, List<Map<String, String>>> collectionsByType = new LinkedHashMap<>();
+        ContentIndex index = new ContentIndex();
         for (ContentItem item : allContent) {
             String type = item.metadata.get(Constants.TYPE_VAR);
             if (type == null || type.isBlank()) continue;
-            collectionsByType
-                .computeIfAbsent(type, k -> new ArrayList<>())
-                .add(item.metadata);
+            index.add(type, item.metadata, item.dateKey);
         }
-
-        PostDateComparator dateComparator = new PostDateComparator();
+        Map<String, List<Map<String, String>>> collectionsByType = index.collections();
         for (Map.Entry<String, List<Map<String, String>>> entry : collectionsByType.entrySet()) {
-            List<Map<String, String>> items = entry.getValue();
-            items.sort(dateComparator);
-            templateEngine.registerGlobalVariable(collectionVariableName(entry.getKey()), items);
+            templateEngine.registerGlobalVariable(collectionVariableName(entry.getKey()), entry.getValue());
         }
 
         // latest_post is exposed as the newest entry of the "post" collection
@@ -89,12 +176,59 @@ public class PageProcessor {
             templateEngine.registerGlobalVariable(Constants.LATEST_POST_VAR, null);
         }
 
+        // Tags and categories: invert them into term -> items (newest first) and
+        // register each taxonomy as a collection of terms, unless a type collection has its name
+        Map<String, List<Map<String, Object>>> taxonomies = new LinkedHashMap<>();
+        for (String taxonomy : List.of(Constants.TAGS_VAR, Constants.CATEGORIES_VAR)) {
+            if (collectionsByType.keySet().stream().map(this::collectionVariableName).anyMatch(taxonomy::equals)) {
+                System.err.println("Not indexing " + taxonomy + ": a content type already uses the collection name");
+                continue;
+            }
+            List<Map<String, Object>> terms = new ArrayList<>();
+            for (ContentIndex.Term term : index.terms(taxonomy)) {
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("name", term.name());
+                entry.put("slug", term.slug());
+                entry.put(Constants.URL_VAR, "/" + taxonomy + "/" + term.slug() + ".html");
+                entry.put("count", term.items().size());
+                entry.put("items", term.items());
+                terms.add(entry);
+            }
+            templateEngine.registerGlobalVariable(taxonomy, terms);
+            taxonomies.put(taxonomy, terms);
+        }
+
         // Load JSON data files from app/data and register each as a global template variable
         loadDataFiles(appDir);
 
+        // Asset URLs for {{ asset "css/style.css" }}: fingerprinted when site.config asks for it
+        templateEngine.registerGlobalVariable(Constants.ASSET_MANIFEST_VAR, fingerprintAssets(appDir, siteDir, siteConfig));
+        
+        // All globals are registered: freeze them so pages can be rendered concurrently
+        templateEngine.freezeGlobals();
+        registerDataKeys(siteConfig);
+
         // Generate HTML for all content
-        for (ContentItem item : allContent) {
-            generateHtml(item, appDir, siteDir);
+        List<Boolean> rendered = forEachInOrder(pool, allContent, item -> generateHtml(item, appDir, siteDir, cache));
+        long reused = rendered.stream().filter(generated -> !generated).count();
+        if (reused > 0) {
+            System.out.println("Skipped " + reused + " unchanged pages (build cache in " + Constants.BUILD_CACHE_DIR + "/)");
+        }
+
+        // Year and month archives of every dated collection, if the site has an archive template
+        String archiveTemplate = siteConfig != null ? siteConfig.get(Constants.ARCHIVE_TEMPLATE_CONFIG) : null;
+        if (archiveTemplate != null && !archiveTemplate.isBlank()) {
+            generateArchives(index, collectionsByType.keySet(), archiveTemplate.trim(), appDir, siteDir, pool);
+        }
+
+        // A page per tag and category, for the taxonomies the site has a template for
+        for (Map.Entry<String, List<Map<String, Object>>> taxonomy : taxonomies.entrySet()) {
+            String configKey = Constants.TAGS_VAR.equals(taxonomy.getKey())
+                ? Constants.TAG_TEMPLATE_CONFIG : Constants.CATEGORY_TEMPLATE_CONFIG;
+            String termTemplate = siteConfig != null ? siteConfig.get(configKey) : null;
+            if (termTemplate != null && !termTemplate.isBlank()) {
+                generateTermPages(taxonomy.getKey(), taxonomy.getValue(), termTemplate.trim(), appDir, siteDir, pool);
+            }
         }
 
         // Generate RSS feed for posts
@@ -118,11 +252,13 @@ public class PageProcessor {
      * template variable. Filename basename (with hyphens replaced by
      * underscores) becomes the variable name. JSON objects are exposed as
      * Map for {{ var.key }} access; JSON arrays are exposed as List for
-     * {% for item in var %} loops.
+     * {% for item in var %} loops. Files are parsed lazily, see {@link JsonData},
+     * and a file that hasn't changed since an earlier build is not read again.
      */
     private void loadDataFiles(Path appDir) throws IOException {
         Path dataDir = appDir.resolve(Constants.DATA_DIR);
         if (!Files.exists(dataDir) || !Files.isDirectory(dataDir)) {
+            dataFiles.clear();
             return;
         }
 
@@ -134,69 +270,77 @@ public class PageProcessor {
                 .sorted()
                 .toList();
         }
+        dataFiles.keySet().retainAll(new HashSet<>(jsonFiles));
 
         for (Path file : jsonFiles) {
             String filename = file.getFileName().toString();
             String basename = filename.substring(0, filename.length() - ".json".length());
             String varName = basename.replace('-', '_');
 
-            String contents = Files.readString(file);
-            Object value;
-            try {
-                value = parseJsonValue(contents);
-            } catch (JSONException e) {
-                throw new IOException("Failed to parse data file " + filename + ": " + e.getMessage(), e);
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            DataFile known = dataFiles.get(file);
+            if (known == null || !known.isCurrent(attributes)) {
+                known = new DataFile(attributes.lastModifiedTime(), attributes.size(), JsonData.load(file));
+                dataFiles.put(file, known);
+                System.out.println("Loaded data file: " + filename + " as " + varName);
             }
 
-            templateEngine.registerGlobalVariable(varName, value);
-            System.out.println("Loaded data file: " + filename + " as " + varName);
+            templateEngine.registerGlobalVariable(varName, known.value());
         }
     }
-
+    
     /**
-     * Parse a JSON document into Java types compatible with the template engine.
-     * Top-level objects become LinkedHashMap, top-level arrays become ArrayList.
-     * Anything else (top-level string/number/etc.) is rejected — data files are
-     * meant to be either records or collections of records.
+     * Write .gz copies of the text files this build wrote or copied (and of up-to-date
+     * copies that don't have one yet) if gzip is set in site.config
      */
-    private Object parseJsonValue(String json) {
-        String trimmed = json.trim();
-        if (trimmed.startsWith("[")) {
-            return jsonArrayToList(new JSONArray(trimmed));
-        }
-        if (trimmed.startsWith("{")) {
-            return jsonObjectToMap(new JSONObject(trimmed));
-        }
-        throw new JSONException("Top-level JSON value must be an object or array");
-    }
-
-    private Map<String, Object> jsonObjectToMap(JSONObject obj) {
-        Map<String, Object> result = new LinkedHashMap<>();
-        for (String key : obj.keySet()) {
-            result.put(key, convertJsonValue(obj.get(key)));
+    private void precompress(Map<String, String> siteConfig) throws IOException {
+        if (!getConfigBooleanValue(siteConfig, Constants.GZIP_CONFIG, false)) {
+            fileProcessor.clearChangedFiles();
+            return;
         }
-        return result;
+        int level = Math.clamp(getConfigIntValue(siteConfig, Constants.GZIP_LEVEL_CONFIG,
+            Constants.DEFAULT_GZIP_LEVEL), Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION);
+        int minSize = getConfigIntValue(siteConfig, Constants.GZIP_MIN_SIZE_CONFIG, Constants.DEFAULT_GZIP_MIN_SIZE);
+        int compressed = fileProcessor.precompressChangedFiles(level, minSize, Runtime.getRuntime().availableProcessors());
+        System.out.println("Compressed " + compressed + " files (gzip level " + level + ")");
     }
 
-    private List<Object> jsonArrayToList(JSONArray arr) {
-        List<Object> result = new ArrayList<>();
-        for (int i = 0; i < arr.length(); i++) {
-            result.add(convertJsonValue(arr.get(i)));
+    /**
+     * Copy the assets to fingerprinted names if fingerprint_assets is set in site.config.
+     * Their hashes are kept in the build cache directory, so only changed assets are read.
+     * @return The asset manifest, empty when assets aren't fingerprinted
+     */
+    private Map<String, String> fingerprintAssets(Path appDir, Path siteDir,
+                                                  Map<String, String> siteConfig) throws IOException {
+        if (!getConfigBooleanValue(siteConfig, Constants.FINGERPRINT_ASSETS_CONFIG, false)) {
+            return Map.of();
         }
-        return result;
+        return fileProcessor.copyFingerprintedAssets(appDir, siteDir,
+            AssetFingerprints.load(BuildCache.directoryFor(appDir)));
     }
 
-    private Object convertJsonValue(Object value) {
-        if (value instanceof JSONObject obj) {
-            return jsonObjectToMap(obj);
-        }
-        if (value instanceof JSONArray arr) {
-            return jsonArrayToList(arr);
-        }
-        if (value == JSONObject.NULL) {
-            return null;
+    /**
+     * Declare the key fields listed in site.config (data_keys: authors:id, products:sku),
+     * so templates can look items up by key with {{ authors[post.author].name }}
+     */
+    private void registerDataKeys(Map<String, String> siteConfig) {
+        Map<String, String> keys = new HashMap<>();
+        String declared = siteConfig != null ? siteConfig.get(Constants.DATA_KEYS_CONFIG) : null;
+        for (String entry : FrontmatterParser.parseList(declared)) {
+            int colon = entry.indexOf(':');
+            String name = colon > 0 ? entry.substring(0, colon).trim() : "";
+            String field = colon > 0 ? entry.substring(colon + 1).trim() : "";
+            if (name.isEmpty() || field.isEmpty()) {
+                System.err.println("Ignoring invalid " + Constants.DATA_KEYS_CONFIG + " entry in "
+                    + Constants.SITE_CONFIG_FILE + ": " + entry);
+            } else if (!(templateEngine.getGlobalVariable(name) instanceof List)) {
+                System.err.println("Ignoring " + Constants.DATA_KEYS_CONFIG + " entry " + entry + ": "
+                    + name + " is not a list");
+            } else {
+                keys.put(name, field);
+            }
         }
-        return value;
+        templateEngine.setCollectionKeys(keys);
     }
     
     /**
@@ -216,37 +360,206 @@ public class PageProcessor {
         return config;
     }
     
-    private ContentItem processFile(Path file, Path appDir, Path siteDir) throws IOException {
-        String content = Files.readString(file);
-        String frontmatter = frontmatterParser.extractFrontmatter(content);
-        String markdownContent = frontmatterParser.extractContent(content);
-        
-        Map<String, String> metadata = new HashMap<>(frontmatterParser.parse(frontmatter));
+    /**
+     * Load the build cache next to the app directory, unless site.config disables it
+     * @return The cache, or null when every page is rendered without one
+     */
+    private BuildCache loadBuildCache(Path appDir, Map<String, String> siteConfig) throws IOException {
+        if (siteConfig != null && "false".equalsIgnoreCase(siteConfig.get(Constants.INCREMENTAL_CONFIG))) {
+            return null;
+        }
         
-        // Add computed fields
-        metadata.put(Constants.URL_VAR, generateUrl(file, appDir, siteDir, metadata));
-        metadata.put("content", markdownContent);
-        metadata.put("rendered_content", convertMarkdownToHtml(markdownContent));
+        // A different site configuration may change any page, so it invalidates the whole cache
+        Path configPath = appDir.resolve(Constants.SITE_CONFIG_FILE);
+        String configHash = Files.exists(configPath) ? BuildCache.hash(Files.readString(configPath)) : "";
+        return BuildCache.load(BuildCache.directoryFor(appDir), configHash, cleanBuild);
+    }
+    
+    /**
+     * Hash everything a content file's pages are rendered from: the source file, the
+     * template and the files it includes, and the globals the templates read that
+     * the page doesn't shadow with its own variables
+     */
+    private Map<String, String> renderInputs(ContentItem item, Path templatePath, Path templatesDir,
+                                             BuildCache cache) throws IOException {
+        Map<String, String> inputs = new TreeMap<>();
+        inputs.put("source", cache.hashFile(item.file));
+        inputs.put("template:" + relativeName(templatesDir, templatePath), cache.hashFile(templatePath));
+        for (Path include : templateEngine.includedFiles(templatePath, templatesDir)) {
+            inputs.put("template:" + relativeName(templatesDir, include), cache.hashFile(include));
+        }
         
-        // Format date if present
-        String date = metadata.get(Constants.DATE_VAR);
-        if (date != null) {
-            metadata.put("formatted_date", formatDateForDisplay(date));
+        Set<String> globals = new TreeSet<>(templateEngine.referencedVariables(templatePath, templatesDir));
+        if (item.metadata.containsKey(Constants.PAGINATE_VAR)) {
+            globals.add(item.metadata.get(Constants.PAGINATE_VAR).trim());
+        }
+        for (String name : globals) {
+            if (Constants.CONTENT_VAR.equals(name) || item.metadata.containsKey(name)) {
+                continue;
+            }
+            inputs.put("global:" + name, cache.hashGlobal(name,
+                templateEngine.hasGlobalVariable(name), templateEngine.getGlobalVariable(name)));
+        }
+        return inputs;
+    }
+    
+    private String relativeName(Path dir, Path file) {
+        return dir.relativize(file).toString().replace("\\", "/");
+    }
+    
+    /**
+     * Number of threads for this build: site.config's parallel (true, or a thread
+     * count) and threads settings win over the thread count set on the processor
+     */
+    private int buildThreads(Map<String, String> siteConfig) {
+        String parallel = siteConfig != null ? siteConfig.get(Constants.PARALLEL_CONFIG) : null;
+        if (parallel == null) {
+            return threads;
+        }
+        if ("false".equalsIgnoreCase(parallel.trim())) {
+            return 1;
+        }
+        int defaultThreads = "true".equalsIgnoreCase(parallel.trim())
+            ? Runtime.getRuntime().availableProcessors()
+            : getConfigIntValue(siteConfig, Constants.PARALLEL_CONFIG, threads);
+        return Math.max(1, getConfigIntValue(siteConfig, Constants.THREADS_CONFIG, defaultThreads));
+    }
+    
+    /**
+     * Apply a task to every input, on the pool's threads if there is a pool.
+     * Results are returned in input order; the first failure is rethrown.
+     * At most {@link Constants#TASKS_PER_THREAD} tasks per thread are queued at a
+     * time, so the pool never holds more than a bounded number of pages in flight.
+     */
+    static <T, R> List<R> forEachInOrder(ForkJoinPool pool, List<T> inputs, ContentTask<T, R> task) throws IOException {
+        List<R> results = new ArrayList<>(inputs.size());
+        if (pool == null) {
+            for (T input : inputs) {
+                results.add(task.apply(input));
+            }
+            return results;
         }
         
-        return new ContentItem(file, metadata, markdownContent);
+        int window = pool.getParallelism() * Constants.TASKS_PER_THREAD;
+        Deque<Future<R>> futures = new ArrayDeque<>(window);
+        try {
+            for (T input : inputs) {
+                // Wait for the oldest task before queueing another once the window is full
+                if (futures.size() == window) {
+                    results.add(futures.removeFirst().get());
+                }
+                futures.addLast(pool.submit(() -> task.apply(input)));
+            }
+            while (!futures.isEmpty()) {
+                results.add(futures.removeFirst().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing content");
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            switch (e.getCause()) {
+                case IOException io -> throw io;
+                case RuntimeException runtime -> throw runtime;
+                case Error error -> throw error;
+                default -> throw new IOException(e.getCause());
+            }
+        }
+        return results;
     }
     
-    private void generateHtml(ContentItem item, Path appDir, Path siteDir) throws IOException {
-        String htmlContent = item.metadata.get("rendered_content");
+    @FunctionalInterface
+    interface ContentTask<T, R> {
+        R apply(T input) throws IOException;
+    }
+    
+    /**
+     * Get boolean configuration value (true or false) or return default
+     */
+    private boolean getConfigBooleanValue(Map<String, String> config, String key, boolean defaultValue) {
+        String value = config != null ? config.get(key) : null;
+        return value == null ? defaultValue : "true".equalsIgnoreCase(value.trim());
+    }
+    
+    /**
+     * Get integer configuration value or return default
+     */
+    private int getConfigIntValue(Map<String, String> config, String key, int defaultValue) {
+        if (config != null && config.containsKey(key)) {
+            try {
+                return Integer.parseInt(config.get(key).trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid " + key + " in " + Constants.SITE_CONFIG_FILE + ": " + config.get(key));
+            }
+        }
+        return defaultValue;
+    }
+    
+    /**
+     * Read a content file's frontmatter and compute its fields. The markdown body is
+     * neither read nor converted here: {@link ContentMetadata} loads it when the
+     * page is generated or a template reads the rendered content of the item.
+     * A file that hasn't changed since an earlier build of this processor is not
+     * read again, so watch-mode rebuilds only parse the files that were edited.
+     */
+    private ContentItem processFile(Path file, Path appDir, Path siteDir, ContentMetadata.BodyLoader loader,
+                                    boolean retainBodies, CompactFields.Shapes shapes) throws IOException {
+        // Attributes first: a file modified while it is read is read again next build
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        DiscoveredFile known = discovered.get(file);
+        if (known == null || !known.isCurrent(attributes)) {
+            String frontmatter = frontmatterParser.readFrontmatter(file);
+            
+            Map<String, String> fields = new HashMap<>(frontmatterParser.parse(frontmatter));
+            
+            // Add computed fields
+            fields.put(Constants.URL_VAR, generateUrl(file, appDir, siteDir, fields));
+            
+            // Format date if present; it is parsed once, into the key collections are sorted by
+            String date = fields.get(Constants.DATE_VAR);
+            long dateKey = ContentIndex.dateKey(date);
+            if (date != null) {
+                fields.put("formatted_date", formatDateForDisplay(LocalDate.ofEpochDay(dateKey)));
+            }
+            
+            known = new DiscoveredFile(attributes.lastModifiedTime(), attributes.size(), CompactFields.of(fields, shapes), dateKey);
+            discovered.put(file, known);
+        }
         
+        return new ContentItem(file, known.dateKey(), new ContentMetadata(file, known.fields(), loader, retainBodies));
+    }
+    
+    /**
+     * The body loader of a build, shared by all its content items
+     * @param cache The build cache holding converted markdown, or null
+     */
+    private ContentMetadata.BodyLoader bodyLoader(BuildCache cache) {
+        return new ContentMetadata.BodyLoader() {
+            @Override
+            public String readMarkdown(Path source) throws IOException {
+                return frontmatterParser.extractContent(Files.readString(source));
+            }
+            
+            @Override
+            public String render(Path source, Supplier<String> markdown) throws IOException {
+                return cache != null
+                    ? cache.markdown(source, () -> convertMarkdownToHtml(markdown.get()))
+                    : convertMarkdownToHtml(markdown.get());
+            }
+        };
+    }
+    
+    /**
+     * Render the page(s) of a content item, unless the build cache shows they are up to date
+     * @return True if the pages were rendered, false if the previous build's output was kept
+     */
+    private boolean generateHtml(ContentItem item, Path appDir, Path siteDir, BuildCache cache) throws IOException {
         // Get template name from frontmatter
         String templateName = item.metadata.get(Constants.TEMPLATE_VAR);
         if (templateName == null) {
             throw new IllegalArgumentException("No template specified in frontmatter for: " + item.file);
         }
         
-        // Load and process template
         Path templatesDir = appDir.resolve(Constants.TEMPLATES_DIR);
         Path templatePath = templatesDir.resolve(templateName);
         
@@ -254,19 +567,241 @@ public class PageProcessor {
             throw new IOException("Template not found: " + templatePath);
         }
         
-        String template = Files.readString(templatePath);
-        String finalHtml = templateEngine.processTemplate(template, item.metadata, htmlContent, templatesDir);
+        String source = relativeName(appDir, item.file);
+        Map<String, String> inputs = null;
+        if (cache != null) {
+            inputs = renderInputs(item, templatePath, templatesDir, cache);
+            if (cache.isUpToDate(source, inputs, siteDir)) {
+                for (String output : cache.keep(source)) {
+                    fileProcessor.keepFile(siteDir.resolve(output));
+                }
+                cache.keepMarkdown(item.file);
+                return false;
+            }
+        }
+        
+        // The body is only loaded now that the page is rendered
+        String htmlContent = item.metadata.get(ContentMetadata.RENDERED_CONTENT_KEY);
         
-        // Write output
+        // Render the template (compiled on first use and cached) straight into the output file
         Path outputPath = fileProcessor.determineOutputPath(
             item.file,
             appDir,
             siteDir,
             item.metadata.get(Constants.TYPE_VAR)
         );
-        fileProcessor.writeFile(outputPath, finalHtml);
+        List<Path> outputs;
+        if (item.metadata.containsKey(Constants.PAGINATE_VAR)) {
+            outputs = generatePaginatedHtml(item, htmlContent, outputPath, siteDir, templatePath, templatesDir);
+        } else {
+            fileProcessor.writeFile(outputPath, out ->
+                templateEngine.processTemplateFile(templatePath, item.metadata, htmlContent, templatesDir, out));
+            System.out.println("Generated: " + siteDir.relativize(outputPath));
+            outputs = List.of(outputPath);
+        }
+        
+        if (cache != null) {
+            cache.record(source, inputs, outputs.stream().map(output -> relativeName(siteDir, output)).toList());
+        }
+        return true;
+    }
+    
+    /**
+     * Render a page once per slice of the collection named by its paginate frontmatter.
+     * The first page is written to the page's usual output path, later pages to
+     * page/N.html next to it (or under a directory named after the page for non-index
+     * pages, e.g. archive/page/2.html). Each page sees a paginator variable whose
+     * items are a view of its slice of the collection, and its own url.
+     * @param content The item's rendered body, shown on every page
+     * @return The generated pages
+     */
+    private List<Path> generatePaginatedHtml(ContentItem item, String content, Path outputPath, Path siteDir,
+                                       Path templatePath, Path templatesDir) throws IOException {
+        String collectionName = item.metadata.get(Constants.PAGINATE_VAR).trim();
+        if (!(templateEngine.getGlobalVariable(collectionName) instanceof List<?> collection)) {
+            throw new IllegalArgumentException("Cannot paginate " + item.file + ": '" + collectionName
+                + "' is not a collection");
+        }
+        int perPage = parsePerPage(item);
+        int totalPages = Math.max(1, (collection.size() + perPage - 1) / perPage);
+        
+        String baseName = outputPath.getFileName().toString().replaceFirst("\\.html$", "");
+        Path pagesDir = (baseName.equals("index") ? outputPath.getParent() : outputPath.resolveSibling(baseName))
+            .resolve(Constants.PAGINATION_DIR);
         
-        System.out.println("Generated: " + siteDir.relativize(outputPath));
+        List<Path> pagePaths = new ArrayList<>();
+        for (int page = 1; page <= totalPages; page++) {
+            Path pagePath = page == 1 ? outputPath : pagesDir.resolve(page + ".html");
+            pagePaths.add(pagePath);
+            
+            Map<String, Object> paginator = new HashMap<>();
+            paginator.put("items", collection.subList((page - 1) * perPage, Math.min(collection.size(), page * perPage)));
+            paginator.put("page", page);
+            paginator.put("per_page", perPage);
+            paginator.put("total_pages", totalPages);
+            paginator.put("total_items", collection.size());
+            if (page > 1) {
+                paginator.put("prev", pageUrl(page - 1, outputPath, pagesDir, siteDir));
+            }
+            if (page < totalPages) {
+                paginator.put("next", pageUrl(page + 1, outputPath, pagesDir, siteDir));
+            }
+            
+            Map<String, Object> variables = new PageVariables(item.metadata, Map.of(
+                Constants.PAGINATOR_VAR, paginator,
+                Constants.URL_VAR, pageUrl(page, outputPath, pagesDir, siteDir)));
+            fileProcessor.writeFile(pagePath, out -> templateEngine.processTemplateFile(
+                templatePath, variables, content, templatesDir, out));
+            
+            System.out.println("Generated: " + siteDir.relativize(pagePath));
+        }
+        return pagePaths;
+    }
+    
+    private int parsePerPage(ContentItem item) {
+        String perPage = item.metadata.get(Constants.PER_PAGE_VAR);
+        if (perPage == null) {
+            return Constants.DEFAULT_PER_PAGE;
+        }
+        try {
+            int value = Integer.parseInt(perPage.trim());
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid per_page in " + item.file + ": " + perPage);
+    }
+    
+    private String pageUrl(int page, Path outputPath, Path pagesDir, Path siteDir) {
+        Path pagePath = page == 1 ? outputPath : pagesDir.resolve(page + ".html");
+        return "/" + siteDir.relativize(pagePath).toString().replace("\\", "/");
+    }
+    
+    /**
+     * Render the archive template once per year and once per month of each dated
+     * collection, e.g. posts/2025/index.html and posts/2025/05/index.html. The pages
+     * see an archive variable with the year, the month (on month pages) and the
+     * items of the period, newest first; year pages also list their months.
+     */
+    private void generateArchives(ContentIndex index, Set<String> types, String archiveTemplate,
+                                  Path appDir, Path siteDir, ForkJoinPool pool) throws IOException {
+        Path templatesDir = appDir.resolve(Constants.TEMPLATES_DIR);
+        Path templatePath = templatesDir.resolve(archiveTemplate);
+        if (!Files.exists(templatePath)) {
+            throw new IOException("Template not found: " + templatePath);
+        }
+        
+        List<ArchivePage> pages = new ArrayList<>();
+        for (String type : types) {
+            Map<YearMonth, List<Map<String, String>>> months = index.months(type);
+            if (Constants.PAGE_TYPE.equals(type) || months.isEmpty()) {
+                continue;
+            }
+            Path typeDir = siteDir.resolve(Constants.POST_TYPE.equals(type) ? Constants.POSTS_DIR : type);
+            
+            // Months arrive newest first, so the years' items and month lists are in order too
+            Map<Integer, List<Map<String, String>>> yearItems = new LinkedHashMap<>();
+            Map<Integer, List<Map<String, Object>>> yearMonths = new LinkedHashMap<>();
+            for (Map.Entry<YearMonth, List<Map<String, String>>> entry : months.entrySet()) {
+                int year = entry.getKey().getYear();
+                String month = entry.getKey().format(MONTH_NUMBER_FORMATTER);
+                String monthName = entry.getKey().format(MONTH_FORMATTER);
+                Path dir = typeDir.resolve(String.valueOf(year)).resolve(month);
+                
+                Map<String, Object> archive = archive(type, monthName + " " + year, dir, siteDir, entry.getValue());
+                archive.put("year", String.valueOf(year));
+                archive.put("month", month);
+                archive.put("month_name", monthName);
+                pages.add(new ArchivePage(dir.resolve("index.html"), archive));
+                
+                yearItems.computeIfAbsent(year, y -> new ArrayList<>()).addAll(entry.getValue());
+                yearMonths.computeIfAbsent(year, y -> new ArrayList<>()).add(Map.of("month", month,
+                    "month_name", monthName, "url", archive.get("url"), "count", entry.getValue().size()));
+            }
+            for (Map.Entry<Integer, List<Map<String, String>>> entry : yearItems.entrySet()) {
+                String year = String.valueOf(entry.getKey());
+                Path dir = typeDir.resolve(year);
+                Map<String, Object> archive = archive(type, year, dir, siteDir, entry.getValue());
+                archive.put("year", year);
+                archive.put("months", yearMonths.get(entry.getKey()));
+                pages.add(new ArchivePage(dir.resolve("index.html"), archive));
+            }
+        }
+        
+        forEachInOrder(pool, pages, page -> {
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("title", page.archive().get("title"));
+            variables.put(Constants.URL_VAR, page.archive().get("url"));
+            variables.put(Constants.ARCHIVE_VAR, page.archive());
+            fileProcessor.writeFile(page.path(), out ->
+                templateEngine.processTemplateFile(templatePath, variables, "", templatesDir, out));
+            System.out.println("Generated: " + siteDir.relativize(page.path()));
+            return page.path();
+        });
+    }
+    
+    /**
+     * Render a taxonomy's term template once per term, to e.g. tags/java.html.
+     * The page sees the term (name, slug, url, count and items) as term.
+     */
+    private void generateTermPages(String taxonomy, List<Map<String, Object>> terms, String termTemplate,
+                                   Path appDir, Path siteDir, ForkJoinPool pool) throws IOException {
+        Path templatesDir = appDir.resolve(Constants.TEMPLATES_DIR);
+        Path templatePath = templatesDir.resolve(termTemplate);
+        if (!Files.exists(templatePath)) {
+            throw new IOException("Template not found: " + templatePath);
+        }
+        
+        Path taxonomyDir = siteDir.resolve(taxonomy);
+        forEachInOrder(pool, terms, term -> {
+            Path outputPath = taxonomyDir.resolve(term.get("slug") + ".html");
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("title", term.get("name"));
+            variables.put(Constants.URL_VAR, term.get(Constants.URL_VAR));
+            variables.put(Constants.TERM_VAR, term);
+            fileProcessor.writeFile(outputPath, out ->
+                templateEngine.processTemplateFile(templatePath, variables, "", templatesDir, out));
+            System.out.println("Generated: " + siteDir.relativize(outputPath));
+            return outputPath;
+        });
+    }
+    
+    private Map<String, Object> archive(String type, String title, Path dir, Path siteDir,
+                                        List<Map<String, String>> items) {
+        Map<String, Object> archive = new HashMap<>();
+        archive.put("type", type);
+        archive.put("title", title);
+        archive.put("items", items);
+        archive.put("url", "/" + siteDir.relativize(dir).toString().replace("\\", "/") + "/");
+        return archive;
+    }
+    
+    /**
+     * The frontmatter fields of a content file as of its modification time and size.
+     * The url field is relative to the site directory, so the fields stay valid for
+     * builds into a different directory, such as each staged generation of --atomic.
+     */
+    private record DiscoveredFile(FileTime modified, long size, CompactFields fields, long dateKey) {
+        boolean isCurrent(BasicFileAttributes attributes) {
+            return modified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+        }
+    }
+    
+    /**
+     * A parsed data file as of its modification time and size
+     */
+    private record DataFile(FileTime modified, long size, JsonData.Node value) {
+        boolean isCurrent(BasicFileAttributes attributes) {
+            return modified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+        }
+    }
+    
+    /**
+     * A year or month archive page and its archive variable
+     */
+    private record ArchivePage(Path path, Map<String, Object> archive) {
     }
     
     private String generateUrl(Path file, Path appDir, Path siteDir, Map<String, String> metadata) {
@@ -283,11 +818,10 @@ public class PageProcessor {
     }
     
     /**
-     * Format date from ISO format (2025-05-28) to readable format (May 28th, 2025)
+     * Format a date as a readable date (May 28th, 2025)
      */
-    private String formatDateForDisplay(String isoDate) {
-        LocalDate date = LocalDate.parse(isoDate);
-        String month = date.format(DateTimeFormatter.ofPattern("MMMM"));
+    private String formatDateForDisplay(LocalDate date) {
+        String month = date.format(MONTH_FORMATTER);
         String dayWithSuffix = date.getDayOfMonth() + getOrdinalSuffix(date.getDayOfMonth());
         int year = date.getYear();
         return String.format("%s %s, %d", month, dayWithSuffix, year);
@@ -321,38 +855,46 @@ public class PageProcessor {
      */
     private static class ContentItem {
         final Path file;
-        final Map<String, String> metadata;
-        final String markdownContent;
+        final long dateKey;
+        final ContentMetadata metadata;
         
-        ContentItem(Path file, Map<String, String> metadata, String markdownContent) {
+        ContentItem(Path file, long dateKey, ContentMetadata metadata) {
             this.file = file;
+            this.dateKey = dateKey;
             this.metadata = metadata;
-            this.markdownContent = markdownContent;
         }
     }
     
     /**
-     * Comparator for sorting posts by date in reverse chronological order
+     * The variables of one page of a paginated item: a few page variables layered
+     * over the item's, which are looked up in place rather than copied, so the
+     * item's body is not loaded for each page
      */
-    private static class PostDateComparator implements Comparator<Map<String, String>> {
+    private static class PageVariables extends AbstractMap<String, Object> {
+        private final Map<String, String> item;
+        private final Map<String, Object> page;
+        
+        PageVariables(Map<String, String> item, Map<String, Object> page) {
+            this.item = item;
+            this.page = page;
+        }
+        
         @Override
-        public int compare(Map<String, String> post1, Map<String, String> post2) {
-            String date1 = post1.get(Constants.DATE_VAR);
-            String date2 = post2.get(Constants.DATE_VAR);
-            
-            // Handle missing dates
-            if (date1 == null && date2 == null) return 0;
-            if (date1 == null) return 1;
-            if (date2 == null) return -1;
-            
-            try {
-                LocalDate localDate1 = LocalDate.parse(date1);
-                LocalDate localDate2 = LocalDate.parse(date2);
-                return localDate2.compareTo(localDate1); // Reverse order
-            } catch (DateTimeParseException e) {
-                // Fall back to string comparison if date parsing fails
-                return date2.compareTo(date1);
-            }
+        public Object get(Object key) {
+            return page.containsKey(key) ? page.get(key) : item.get(key);
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            return page.containsKey(key) || item.containsKey(key);
+        }
+        
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            Map<String, Object> all = new HashMap<>(item);
+            all.putAll(page);
+            return Collections.unmodifiableMap(all).entrySet();
         }
     }
+
 } 
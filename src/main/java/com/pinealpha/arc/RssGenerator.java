@@ -1,6 +1,7 @@
 package com.pinealpha.arc;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
@@ -40,8 +41,35 @@ public class RssGenerator {
         String siteLanguage = getConfigValue(siteConfig, "language", Constants.DEFAULT_SITE_LANGUAGE);
         int maxItems = getConfigIntValue(siteConfig, "rss_max_items", Constants.DEFAULT_RSS_MAX_ITEMS);
         
+        // Stream the feed into the file, so only one post's content is held at a time
+        Path feedPath = siteDir.resolve(Constants.RSS_FEED_FILE);
+        int[] itemCount = new int[1];
+        fileProcessor.writeFile(feedPath, out -> itemCount[0] = writeFeed(out, posts,
+            siteTitle, siteDescription, siteUrl, siteLanguage, maxItems));
+        
+        System.out.println("Generated RSS feed: " + siteDir.relativize(feedPath));
+        System.out.println("  - Included " + itemCount[0] + " posts");
+        
+        // Show config recommendation if using defaults
+        if (siteConfig == null) {
+            System.out.println("\n📝 TIP: Create an app/" + Constants.SITE_CONFIG_FILE + " file to customize your RSS feed:");
+            System.out.println("---");
+            System.out.println("title: " + siteTitle);
+            System.out.println("description: " + siteDescription);
+            System.out.println("url: " + siteUrl);
+            System.out.println("language: " + siteLanguage);
+            System.out.println("rss_max_items: " + maxItems);
+            System.out.println("---\n");
+        }
+    }
+    
+    /**
+     * Write the feed XML
+     * @return The number of posts included
+     */
+    private int writeFeed(Writer rss, List<Map<String, String>> posts, String siteTitle, String siteDescription,
+                          String siteUrl, String siteLanguage, int maxItems) throws IOException {
         // Build RSS XML
-        StringBuilder rss = new StringBuilder();
         rss.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
         rss.append("<rss version=\"2.0\" xmlns:content=\"http://purl.org/rss/1.0/modules/content/\">\n");
         rss.append("  <channel>\n");
@@ -51,7 +79,7 @@ public class RssGenerator {
         rss.append("    <link>").append(escapeXml(siteUrl)).append("</link>\n");
         rss.append("    <description>").append(escapeXml(siteDescription)).append("</description>\n");
         rss.append("    <language>").append(escapeXml(siteLanguage)).append("</language>\n");
-        rss.append("    <lastBuildDate>").append(getCurrentRFC822Date()).append("</lastBuildDate>\n");
+        rss.append("    <lastBuildDate>").append(lastBuildDate(posts)).append("</lastBuildDate>\n");
         rss.append("    <generator>Arc Static Site Generator</generator>\n");
         
         // Add posts (limited by maxItems)
@@ -98,25 +126,7 @@ public class RssGenerator {
         
         rss.append("  </channel>\n");
         rss.append("</rss>\n");
-        
-        // Write feed to file
-        Path feedPath = siteDir.resolve(Constants.RSS_FEED_FILE);
-        fileProcessor.writeFile(feedPath, rss.toString());
-        
-        System.out.println("Generated RSS feed: " + siteDir.relativize(feedPath));
-        System.out.println("  - Included " + itemCount + " posts");
-        
-        // Show config recommendation if using defaults
-        if (siteConfig == null) {
-            System.out.println("\n📝 TIP: Create an app/" + Constants.SITE_CONFIG_FILE + " file to customize your RSS feed:");
-            System.out.println("---");
-            System.out.println("title: " + siteTitle);
-            System.out.println("description: " + siteDescription);
-            System.out.println("url: " + siteUrl);
-            System.out.println("language: " + siteLanguage);
-            System.out.println("rss_max_items: " + maxItems);
-            System.out.println("---\n");
-        }
+        return itemCount;
     }
     
     /**
@@ -157,6 +167,21 @@ public class RssGenerator {
         }
     }
     
+    /**
+     * The date of the newest post, when the feed's content last changed. Unlike the
+     * time of the build, it leaves the feed the same when no post changed, so an
+     * unchanged feed is not rewritten or compressed again.
+     */
+    private String lastBuildDate(List<Map<String, String>> posts) {
+        for (Map<String, String> post : posts) {
+            String date = post.get(Constants.DATE_VAR);
+            if (date != null) {
+                return convertToRFC822(date);
+            }
+        }
+        return getCurrentRFC822Date();
+    }
+    
     /**
      * Get current date in RFC 822 format
      */
@@ -0,0 +1,181 @@
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Publishes each build of the site atomically. The site directory is a symbolic
+ * link to a generation directory in .site-generations/ next to it; a build is
+ * written into a new generation, which starts out as hard links to the files of
+ * the published one, and the link is then switched over to it with a single
+ * rename. A web server serving the site directory sees either the old site or
+ * the new one, never a mix of both. The previous generation is kept, for requests
+ * still reading from it, and older ones are deleted.
+ */
+public class SitePublisher {
+
+    private final Path siteDir;
+    private final Path generationsDir;
+
+    /**
+     * @param siteDir The site directory, which becomes a link to the published generation
+     */
+    public SitePublisher(Path siteDir) {
+        this.siteDir = siteDir.toAbsolutePath().normalize();
+        this.generationsDir = this.siteDir.resolveSibling(Constants.SITE_GENERATIONS_DIR);
+    }
+
+    /**
+     * Create the directory to build the next generation in. It holds hard links to
+     * every file of the published site, so the build only replaces what changed;
+     * {@link FileProcessor} replaces files rather than writing into them, which
+     * leaves the published copies untouched.
+     * @return The staging directory
+     */
+    public Path stage() throws IOException {
+        Files.createDirectories(generationsDir);
+        Path published = published();
+        Path staged = generationsDir.resolve(Long.toString(latestGeneration() + 1));
+        Files.createDirectory(staged);
+        if (published != null) {
+            linkTree(published, staged);
+        }
+        return staged;
+    }
+
+    /**
+     * Switch the site directory over to a staged generation, then delete the
+     * generations before the one it replaces
+     * @param staged A directory returned by {@link #stage()}
+     */
+    public void publish(Path staged) throws IOException {
+        Path link = swapLink(staged);
+        // Renaming over the old link replaces it in one step
+        Files.move(link, siteDir, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Published " + siteDir.getFileName() + " -> " + siteDir.getParent().relativize(staged));
+
+        long current = Long.parseLong(staged.getFileName().toString());
+        for (Path generation : generations()) {
+            if (Long.parseLong(generation.getFileName().toString()) < current - 1) {
+                deleteTree(generation);
+            }
+        }
+    }
+
+    /**
+     * Delete a staged generation that will not be published, after a failed build
+     */
+    public void discard(Path staged) throws IOException {
+        deleteTree(staged);
+    }
+
+    /**
+     * The generation the site directory links to. A site directory that is still a
+     * plain directory is moved into the generations directory first, and replaced
+     * by a link to it. A rename can't replace a directory with a link, so this first
+     * switch is two renames in a row, between which the site directory is missing;
+     * the link is created beforehand to keep that gap as short as possible.
+     * @return The published generation, or null if nothing has been built yet
+     */
+    private Path published() throws IOException {
+        if (Files.isSymbolicLink(siteDir)) {
+            return siteDir.resolveSibling(Files.readSymbolicLink(siteDir)).normalize();
+        }
+        if (!Files.isDirectory(siteDir)) {
+            return null;
+        }
+        Path adopted = generationsDir.resolve(Long.toString(latestGeneration() + 1));
+        Path link = swapLink(adopted);
+        Files.move(siteDir, adopted, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(link, siteDir, StandardCopyOption.ATOMIC_MOVE);
+        return adopted;
+    }
+
+    /**
+     * Create a link to a generation next to the site directory, to be renamed over it
+     */
+    private Path swapLink(Path generation) throws IOException {
+        Path link = siteDir.resolveSibling(siteDir.getFileName() + ".swap");
+        Files.deleteIfExists(link);
+        Files.createSymbolicLink(link, siteDir.getParent().relativize(generation));
+        return link;
+    }
+
+    private long latestGeneration() throws IOException {
+        long latest = 0;
+        for (Path generation : generations()) {
+            latest = Math.max(latest, Long.parseLong(generation.getFileName().toString()));
+        }
+        return latest;
+    }
+
+    /**
+     * The numbered generation directories; anything else in the directory is ignored
+     */
+    private List<Path> generations() throws IOException {
+        List<Path> generations = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(generationsDir)) {
+            for (Path entry : entries.toList()) {
+                if (entry.getFileName().toString().matches("\\d{1,18}") && Files.isDirectory(entry)) {
+                    generations.add(entry);
+                }
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * Recreate a directory tree with hard links to its files, or copies where the
+     * file system can't link them
+     */
+    private static void linkTree(Path sourceDir, Path targetDir) throws IOException {
+        Files.walkFileTree(sourceDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(targetDir.resolve(sourceDir.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path target = targetDir.resolve(sourceDir.relativize(file));
+                try {
+                    Files.createLink(target, file);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
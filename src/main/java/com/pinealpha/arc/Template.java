@@ -0,0 +1,97 @@
+package com.pinealpha.arc;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A template compiled into a tree of nodes by {@link TemplateCompiler}.
+ * Rendering walks the tree once, so templates only have to be parsed once per build.
+ *
+ * @param source The file the template was compiled from, or null for inline templates
+ * @param nodes The top-level nodes of the template
+ * @param variables Names of the variables the template reads (excluding loop items and includes)
+ * @param includes Names of the files the template includes directly
+ */
+public record Template(Path source, List<Node> nodes, Set<String> variables, Set<String> includes) {
+
+    /**
+     * A single element of a compiled template
+     */
+    public sealed interface Node permits Text, Variable, Lookup, Asset, If, For, Include {
+    }
+
+    /**
+     * Literal text copied to the output as-is
+     */
+    public record Text(String text) implements Node {
+    }
+
+    /**
+     * A {{ variable }} or {{ object.key }} reference, with the path pre-split on dots.
+     * The original tag source is kept so unknown simple variables can be left untouched.
+     */
+    public record Variable(String path, List<String> segments, String source) implements Node {
+    }
+
+    /**
+     * A {{ collection[key].field }} reference: the item of a collection whose key field
+     * (see {@link TemplateEngine#setCollectionKeys(Map)}) equals the value of the key
+     * variable, or the entry of a map under that value, followed by a dotted path into it.
+     * @param fields The path after the brackets, empty to render the item itself
+     */
+    public record Lookup(String collection, List<String> segments, String key, List<String> keySegments,
+                         List<String> fields, String source) implements Node {
+    }
+
+    /**
+     * An {{ asset "css/style.css" }} reference: the URL of an asset, fingerprinted when the
+     * site's asset manifest has an entry for it
+     * @param path The asset's path relative to the assets directory
+     */
+    public record Asset(String path) implements Node {
+    }
+
+    /**
+     * A condition of an if tag: either an existence check (expected is null)
+     * or an equality check against a literal value.
+     */
+    public record Condition(String path, List<String> segments, String expected) {
+    }
+
+    /**
+     * A {% if condition %}...{% endif %} block starting on the given line of its template
+     */
+    public record If(Condition condition, List<Node> body, int line) implements Node {
+    }
+
+    /**
+     * A {% for item in collection where field == 'value' sort field desc limit N offset M %}...{% endfor %}
+     * block. The where condition and sort key (both null when absent) are resolved against
+     * each item; offset and limit apply to the filtered, sorted items.
+     * A negative limit means the rest of the collection after the offset is rendered.
+     */
+    public record For(String itemVar, String collection, List<String> segments, Condition where, Sort sort,
+                      int limit, int offset, List<Node> body, int line) implements Node {
+    }
+
+    /**
+     * The sort clause of a loop: the item field to order by and its direction
+     */
+    public record Sort(String path, List<String> segments, boolean descending) {
+    }
+
+    /**
+     * A {% include "file.html" %} directive, resolved against the templates directory at render time
+     */
+    public record Include(String name, int line) implements Node {
+    }
+
+    /**
+     * Split a dotted variable path into its segments
+     */
+    public static List<String> segments(String path) {
+        return List.of(path.split("\\."));
+    }
+}
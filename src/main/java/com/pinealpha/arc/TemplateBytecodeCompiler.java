@@ -0,0 +1,315 @@
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Compiles a {@link Template} node tree into a hidden class using the JDK ClassFile API.
+ * The generated render method writes text with straight-line calls to the writer and
+ * looks variables up directly by name, so the JIT can inline a whole page render.
+ * Loops that may be reused across pages and includes are handed back to the
+ * template engine through {@link Fragments}.
+ */
+public class TemplateBytecodeCompiler {
+
+    /**
+     * Callbacks into the template engine for nodes whose output may be cached
+     */
+    public interface Fragments {
+
+        /**
+         * Check whether the output of a loop can be reused from the fragment cache
+         */
+        boolean isReusable(Template.Node node, TemplateScope scope) throws IOException;
+
+        /**
+         * Render a loop or include through the template engine
+         */
+        void render(Template.Node node, TemplateScope scope, Writer out) throws IOException;
+
+        /**
+         * The items a loop with where or sort clauses renders
+         */
+        List<?> select(Template.For loop, Object collection, TemplateScope scope);
+
+        /**
+         * The text of a keyed lookup, through the collection's key index
+         */
+        String lookup(Template.Lookup lookup, TemplateScope scope);
+    }
+
+    // Constant pool strings are limited to 65535 bytes of modified UTF-8
+    private static final int MAX_TEXT_CHUNK = 16384;
+
+    private static final ClassDesc CD_WRITER = desc(Writer.class);
+    private static final ClassDesc CD_LIST = desc(List.class);
+    private static final ClassDesc CD_ITERATOR = desc(Iterator.class);
+    private static final ClassDesc CD_SCOPE = desc(TemplateScope.class);
+    private static final ClassDesc CD_NODE = desc(Template.Node.class);
+    private static final ClassDesc CD_FOR = desc(Template.For.class);
+    private static final ClassDesc CD_LOOKUP = desc(Template.Lookup.class);
+    private static final ClassDesc CD_FRAGMENTS = desc(Fragments.class);
+    private static final ClassDesc CD_COMPILED = desc(CompiledTemplate.class);
+    private static final ClassDesc CD_OBJECT_ARRAY = ConstantDescs.CD_Object.arrayType();
+
+    private static final MethodTypeDesc MTD_WRITE = MethodTypeDesc.of(ConstantDescs.CD_void, ConstantDescs.CD_String);
+    private static final MethodTypeDesc MTD_GET = MethodTypeDesc.of(ConstantDescs.CD_Object, ConstantDescs.CD_String);
+    private static final MethodTypeDesc MTD_RESOLVE = MethodTypeDesc.of(ConstantDescs.CD_Object, ConstantDescs.CD_String, CD_LIST);
+    private static final MethodTypeDesc MTD_TEXT = MethodTypeDesc.of(ConstantDescs.CD_String,
+        ConstantDescs.CD_Object, CD_SCOPE, ConstantDescs.CD_String, ConstantDescs.CD_String);
+    private static final MethodTypeDesc MTD_ASSET = MethodTypeDesc.of(ConstantDescs.CD_String,
+        ConstantDescs.CD_Object, ConstantDescs.CD_String);
+    private static final MethodTypeDesc MTD_IS_TRUTHY = MethodTypeDesc.of(ConstantDescs.CD_boolean, ConstantDescs.CD_Object);
+    private static final MethodTypeDesc MTD_MATCHES = MethodTypeDesc.of(ConstantDescs.CD_boolean,
+        ConstantDescs.CD_Object, ConstantDescs.CD_String);
+    private static final MethodTypeDesc MTD_SLICE = MethodTypeDesc.of(CD_LIST,
+        ConstantDescs.CD_Object, ConstantDescs.CD_int, ConstantDescs.CD_int);
+    private static final MethodTypeDesc MTD_PUSH = MethodTypeDesc.of(CD_SCOPE, ConstantDescs.CD_String);
+    private static final MethodTypeDesc MTD_SET = MethodTypeDesc.of(ConstantDescs.CD_void, ConstantDescs.CD_Object);
+    private static final MethodTypeDesc MTD_ITERATOR = MethodTypeDesc.of(CD_ITERATOR);
+    private static final MethodTypeDesc MTD_HAS_NEXT = MethodTypeDesc.of(ConstantDescs.CD_boolean);
+    private static final MethodTypeDesc MTD_NEXT = MethodTypeDesc.of(ConstantDescs.CD_Object);
+    private static final MethodTypeDesc MTD_IS_REUSABLE = MethodTypeDesc.of(ConstantDescs.CD_boolean, CD_NODE, CD_SCOPE);
+    private static final MethodTypeDesc MTD_RENDER_FRAGMENT = MethodTypeDesc.of(ConstantDescs.CD_void,
+        CD_NODE, CD_SCOPE, CD_WRITER);
+    private static final MethodTypeDesc MTD_SELECT = MethodTypeDesc.of(CD_LIST,
+        CD_FOR, ConstantDescs.CD_Object, CD_SCOPE);
+    private static final MethodTypeDesc MTD_LOOKUP = MethodTypeDesc.of(ConstantDescs.CD_String, CD_LOOKUP, CD_SCOPE);
+    private static final MethodTypeDesc MTD_RENDER = MethodTypeDesc.of(ConstantDescs.CD_void, CD_SCOPE, CD_WRITER);
+    private static final MethodTypeDesc MTD_INIT = MethodTypeDesc.of(ConstantDescs.CD_void, CD_OBJECT_ARRAY, CD_FRAGMENTS);
+
+    // Local variable slots of the generated render method
+    private static final int THIS_SLOT = 0;
+    private static final int SCOPE_SLOT = 1;
+    private static final int OUT_SLOT = 2;
+    private static final int FIRST_FREE_SLOT = 3;
+
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    /**
+     * Compile a template into a hidden class and instantiate it
+     * @param template The template to compile
+     * @param fragments Callbacks used for loops and includes
+     * @return The compiled template
+     */
+    public CompiledTemplate compile(Template template, Fragments fragments) throws ReflectiveOperationException {
+        ClassDesc thisClass = ClassDesc.of(getClass().getPackageName(), "GeneratedTemplate");
+        List<Object> constants = new ArrayList<>();
+
+        byte[] bytes = ClassFile.of().build(thisClass, clb -> clb
+            .withFlags(ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC)
+            .withSuperclass(ConstantDescs.CD_Object)
+            .withInterfaceSymbols(CD_COMPILED)
+            .withField("constants", CD_OBJECT_ARRAY, ClassFile.ACC_PRIVATE | ClassFile.ACC_FINAL)
+            .withField("fragments", CD_FRAGMENTS, ClassFile.ACC_PRIVATE | ClassFile.ACC_FINAL)
+            .withMethodBody(ConstantDescs.INIT_NAME, MTD_INIT, ClassFile.ACC_PUBLIC, cob -> cob
+                .aload(THIS_SLOT)
+                .invokespecial(ConstantDescs.CD_Object, ConstantDescs.INIT_NAME, MethodTypeDesc.of(ConstantDescs.CD_void))
+                .aload(THIS_SLOT)
+                .aload(1)
+                .putfield(thisClass, "constants", CD_OBJECT_ARRAY)
+                .aload(THIS_SLOT)
+                .aload(2)
+                .putfield(thisClass, "fragments", CD_FRAGMENTS)
+                .return_())
+            .withMethodBody("render", MTD_RENDER, ClassFile.ACC_PUBLIC, cob -> {
+                new Emitter(cob, thisClass, constants).emitNodes(template.nodes(), SCOPE_SLOT, FIRST_FREE_SLOT);
+                cob.return_();
+            }));
+
+        Class<?> generated = lookup.defineHiddenClass(bytes, true).lookupClass();
+        return (CompiledTemplate) generated
+            .getConstructor(Object[].class, Fragments.class)
+            .newInstance(constants.toArray(), fragments);
+    }
+
+    private static ClassDesc desc(Class<?> type) {
+        return type.describeConstable().orElseThrow();
+    }
+
+    /**
+     * Emits the bytecode of a node tree into the render method
+     */
+    private static class Emitter {
+        private final CodeBuilder cob;
+        private final ClassDesc thisClass;
+        private final List<Object> constants;
+
+        Emitter(CodeBuilder cob, ClassDesc thisClass, List<Object> constants) {
+            this.cob = cob;
+            this.thisClass = thisClass;
+            this.constants = constants;
+        }
+
+        /**
+         * @param scopeSlot Local slot holding the current scope
+         * @param freeSlot First local slot not used by enclosing code
+         */
+        void emitNodes(List<Template.Node> nodes, int scopeSlot, int freeSlot) {
+            for (Template.Node node : nodes) {
+                switch (node) {
+                    case Template.Text text -> emitText(text.text());
+                    case Template.Variable variable -> emitVariable(variable, scopeSlot);
+                    case Template.Lookup lookup -> emitLookup(lookup, scopeSlot);
+                    case Template.Asset asset -> emitAsset(asset, scopeSlot);
+                    case Template.If conditional -> emitIf(conditional, scopeSlot, freeSlot);
+                    case Template.For loop -> emitFor(loop, scopeSlot, freeSlot);
+                    case Template.Include include -> emitFragment(include, scopeSlot);
+                }
+            }
+        }
+
+        private void emitText(String text) {
+            for (int start = 0; start < text.length(); start += MAX_TEXT_CHUNK) {
+                String chunk = text.substring(start, Math.min(text.length(), start + MAX_TEXT_CHUNK));
+                cob.aload(OUT_SLOT)
+                    .loadConstant(chunk)
+                    .invokevirtual(CD_WRITER, "write", MTD_WRITE);
+            }
+        }
+
+        private void emitVariable(Template.Variable variable, int scopeSlot) {
+            cob.aload(OUT_SLOT);
+            emitResolve(variable.path(), variable.segments(), scopeSlot);
+            if (variable.segments().size() == 1) {
+                cob.aload(scopeSlot);
+            } else {
+                // Missing nested properties always render as empty text
+                cob.aconst_null();
+            }
+            cob.loadConstant(variable.path())
+                .loadConstant(variable.source())
+                .invokestatic(CD_SCOPE, "text", MTD_TEXT)
+                .invokevirtual(CD_WRITER, "write", MTD_WRITE);
+        }
+
+        private void emitLookup(Template.Lookup lookup, int scopeSlot) {
+            cob.aload(OUT_SLOT);
+            emitFragments();
+            emitConstant(lookup, CD_LOOKUP);
+            cob.aload(scopeSlot)
+                .invokeinterface(CD_FRAGMENTS, "lookup", MTD_LOOKUP)
+                .invokevirtual(CD_WRITER, "write", MTD_WRITE);
+        }
+
+        private void emitAsset(Template.Asset asset, int scopeSlot) {
+            cob.aload(OUT_SLOT)
+                .aload(scopeSlot)
+                .loadConstant(Constants.ASSET_MANIFEST_VAR)
+                .invokevirtual(CD_SCOPE, "get", MTD_GET)
+                .loadConstant(asset.path())
+                .invokestatic(CD_SCOPE, "asset", MTD_ASSET)
+                .invokevirtual(CD_WRITER, "write", MTD_WRITE);
+        }
+
+        private void emitIf(Template.If conditional, int scopeSlot, int freeSlot) {
+            Template.Condition condition = conditional.condition();
+            Label end = cob.newLabel();
+
+            emitResolve(condition.path(), condition.segments(), scopeSlot);
+            if (condition.expected() != null) {
+                cob.loadConstant(condition.expected())
+                    .invokestatic(CD_SCOPE, "matches", MTD_MATCHES);
+            } else {
+                cob.invokestatic(CD_SCOPE, "isTruthy", MTD_IS_TRUTHY);
+            }
+            cob.ifeq(end);
+            emitNodes(conditional.body(), scopeSlot, freeSlot);
+            cob.labelBinding(end);
+        }
+
+        private void emitFor(Template.For loop, int scopeSlot, int freeSlot) {
+            int iteratorSlot = freeSlot;
+            int frameSlot = freeSlot + 1;
+            Label inline = cob.newLabel();
+            Label next = cob.newLabel();
+            Label end = cob.newLabel();
+
+            // Loops that only read globals go through the engine's fragment cache
+            emitFragments();
+            emitConstant(loop, CD_NODE);
+            cob.aload(scopeSlot)
+                .invokeinterface(CD_FRAGMENTS, "isReusable", MTD_IS_REUSABLE)
+                .ifeq(inline);
+            emitFragment(loop, scopeSlot);
+            cob.goto_(end);
+
+            cob.labelBinding(inline);
+            if (loop.where() != null || loop.sort() != null) {
+                emitFragments();
+                emitConstant(loop, CD_FOR);
+                emitResolve(loop.collection(), loop.segments(), scopeSlot);
+                cob.aload(scopeSlot)
+                    .invokeinterface(CD_FRAGMENTS, "select", MTD_SELECT);
+            } else {
+                emitResolve(loop.collection(), loop.segments(), scopeSlot);
+                cob.loadConstant(loop.offset())
+                    .loadConstant(loop.limit())
+                    .invokestatic(CD_SCOPE, "slice", MTD_SLICE);
+            }
+            cob.invokeinterface(CD_LIST, "iterator", MTD_ITERATOR)
+                .astore(iteratorSlot)
+                .aload(scopeSlot)
+                .loadConstant(loop.itemVar())
+                .invokevirtual(CD_SCOPE, "push", MTD_PUSH)
+                .astore(frameSlot);
+
+            cob.labelBinding(next);
+            cob.aload(iteratorSlot)
+                .invokeinterface(CD_ITERATOR, "hasNext", MTD_HAS_NEXT)
+                .ifeq(end)
+                .aload(frameSlot)
+                .aload(iteratorSlot)
+                .invokeinterface(CD_ITERATOR, "next", MTD_NEXT)
+                .invokevirtual(CD_SCOPE, "set", MTD_SET);
+            emitNodes(loop.body(), frameSlot, freeSlot + 2);
+            cob.goto_(next);
+
+            cob.labelBinding(end);
+        }
+
+        private void emitFragment(Template.Node node, int scopeSlot) {
+            emitFragments();
+            emitConstant(node, CD_NODE);
+            cob.aload(scopeSlot)
+                .aload(OUT_SLOT)
+                .invokeinterface(CD_FRAGMENTS, "render", MTD_RENDER_FRAGMENT);
+        }
+
+        /**
+         * Push the value of a variable path; simple names are a single scope lookup
+         */
+        private void emitResolve(String path, List<String> segments, int scopeSlot) {
+            cob.aload(scopeSlot).loadConstant(path);
+            if (segments.size() == 1) {
+                cob.invokevirtual(CD_SCOPE, "get", MTD_GET);
+            } else {
+                emitConstant(segments, CD_LIST);
+                cob.invokevirtual(CD_SCOPE, "resolve", MTD_RESOLVE);
+            }
+        }
+
+        private void emitFragments() {
+            cob.aload(THIS_SLOT).getfield(thisClass, "fragments", CD_FRAGMENTS);
+        }
+
+        private void emitConstant(Object value, ClassDesc type) {
+            constants.add(value);
+            cob.aload(THIS_SLOT)
+                .getfield(thisClass, "constants", CD_OBJECT_ARRAY)
+                .loadConstant(constants.size() - 1)
+                .aaload()
+                .checkcast(type);
+        }
+    }
+}
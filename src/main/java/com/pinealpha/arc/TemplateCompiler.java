@@ -0,0 +1,286 @@
+package com.pinealpha.arc;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles template source into a {@link Template} node tree.
+ * The source is scanned once for {{ ... }} and {% ... %} tags; block tags
+ * (if/for) are nested by matching them with their end tags.
+ */
+public class TemplateCompiler {
+
+    private final Pattern variablePattern = Pattern.compile(Constants.VARIABLE_PATTERN);
+    private final Pattern lookupPattern = Pattern.compile(Constants.LOOKUP_PATTERN);
+    private final Pattern assetPattern = Pattern.compile(Constants.ASSET_PATTERN);
+    private final Pattern includePattern = Pattern.compile(Constants.INCLUDE_PATTERN);
+    private final Pattern ifPattern = Pattern.compile(Constants.IF_PATTERN, Pattern.DOTALL);
+    private final Pattern forPattern = Pattern.compile(Constants.FOR_PATTERN, Pattern.DOTALL);
+    private final Pattern forClausePattern = Pattern.compile(Constants.FOR_CLAUSE_PATTERN);
+
+    /**
+     * Compile template source into a node tree
+     * @param source The template content
+     * @param origin The file the template was read from (may be null)
+     * @return The compiled template
+     */
+    public Template compile(String source, Path origin) {
+        Deque<Block> blocks = new ArrayDeque<>();
+        blocks.push(new Block(null, null));
+
+        int pos = 0;
+        int line = 1;
+        int lineCountedTo = 0;
+        while (pos < source.length()) {
+            int open = nextTagStart(source, pos);
+            if (open < 0) {
+                blocks.peek().addText(source.substring(pos));
+                break;
+            }
+            blocks.peek().addText(source.substring(pos, open));
+
+            boolean isVariable = source.startsWith("{{", open);
+            int close = source.indexOf(isVariable ? "}}" : "%}", open + 2);
+            if (close < 0) {
+                blocks.peek().addText(source.substring(open));
+                break;
+            }
+
+            String tagSource = source.substring(open, close + 2);
+            String tagBody = source.substring(open + 2, close).trim();
+            pos = close + 2;
+
+            if (isVariable) {
+                compileVariable(tagBody, tagSource, blocks.peek());
+            } else {
+                line += countLines(source, lineCountedTo, open);
+                lineCountedTo = open;
+                compileTag(tagBody, tagSource, line, blocks);
+            }
+        }
+
+        // An unclosed if runs to the end of the template; an unclosed for is kept as text
+        while (blocks.size() > 1) {
+            closeBlock(blocks, blocks.peek().header instanceof IfHeader);
+        }
+        List<Template.Node> nodes = blocks.pop().nodes();
+
+        Set<String> variables = new LinkedHashSet<>();
+        Set<String> includes = new LinkedHashSet<>();
+        scanReferences(nodes, new HashSet<>(), variables, includes);
+        return new Template(origin, nodes, Set.copyOf(variables), Set.copyOf(includes));
+    }
+
+    /**
+     * Collect the variables and includes referenced by a single node and its children
+     * @param node The node to scan
+     * @param variables Receives the free variable names of the node
+     * @param includes Receives the names of the files included by the node
+     */
+    public void scanReferences(Template.Node node, Set<String> variables, Set<String> includes) {
+        scanReferences(List.of(node), new HashSet<>(), variables, includes);
+    }
+
+    /**
+     * Collect the variables and includes referenced by a node tree.
+     * Loop item variables are only bound inside their loop body, so references
+     * to them there are not free variables of the template.
+     */
+    private void scanReferences(List<Template.Node> nodes, Set<String> bound,
+                                Set<String> variables, Set<String> includes) {
+        for (Template.Node node : nodes) {
+            switch (node) {
+                case Template.Text text -> { }
+                case Template.Variable variable -> addReference(variable.path(), bound, variables);
+                case Template.Lookup lookup -> {
+                    addReference(lookup.collection(), bound, variables);
+                    addReference(lookup.key(), bound, variables);
+                }
+                case Template.Asset asset -> addReference(Constants.ASSET_MANIFEST_VAR, bound, variables);
+                case Template.If conditional -> {
+                    addReference(conditional.condition().path(), bound, variables);
+                    scanReferences(conditional.body(), bound, variables, includes);
+                }
+                case Template.For loop -> {
+                    addReference(loop.collection(), bound, variables);
+                    Set<String> loopBound = new HashSet<>(bound);
+                    loopBound.add(loop.itemVar());
+                    scanReferences(loop.body(), loopBound, variables, includes);
+                }
+                case Template.Include include -> includes.add(include.name());
+            }
+        }
+    }
+
+    private void addReference(String path, Set<String> bound, Set<String> variables) {
+        int dot = path.indexOf('.');
+        String root = dot < 0 ? path : path.substring(0, dot);
+        if (bound.contains(root)) {
+            return;
+        }
+        // Keep the full path too: a variable may be registered under a dotted name
+        variables.add(root);
+        variables.add(path);
+    }
+
+    private int nextTagStart(String source, int from) {
+        int variable = source.indexOf("{{", from);
+        int tag = source.indexOf("{%", from);
+        if (variable < 0) return tag;
+        if (tag < 0) return variable;
+        return Math.min(variable, tag);
+    }
+
+    private int countLines(String source, int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; i++) {
+            if (source.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private void compileVariable(String tagBody, String tagSource, Block block) {
+        Matcher lookup;
+        Matcher asset;
+        if (variablePattern.matcher(tagBody).matches()) {
+            block.add(new Template.Variable(tagBody, Template.segments(tagBody), tagSource));
+        } else if ((lookup = lookupPattern.matcher(tagBody)).matches()) {
+            String fields = lookup.group(3);
+            block.add(new Template.Lookup(lookup.group(1), Template.segments(lookup.group(1)),
+                lookup.group(2), Template.segments(lookup.group(2)),
+                fields.isEmpty() ? List.of() : Template.segments(fields.substring(1)), tagSource));
+        } else if ((asset = assetPattern.matcher(tagBody)).matches()) {
+            block.add(new Template.Asset(asset.group(1)));
+        } else {
+            block.addText(tagSource);
+        }
+    }
+
+    private void compileTag(String tagBody, String tagSource, int line, Deque<Block> blocks) {
+        Matcher matcher;
+        if ((matcher = includePattern.matcher(tagBody)).matches()) {
+            blocks.peek().add(new Template.Include(matcher.group(1), line));
+        } else if ((matcher = forPattern.matcher(tagBody)).matches()) {
+            int limit = -1;
+            int offset = 0;
+            Template.Condition where = null;
+            Template.Sort sort = null;
+            Matcher clause = forClausePattern.matcher(matcher.group(3));
+            while (clause.find()) {
+                if (clause.group(3) != null) {
+                    where = clause.group(4) != null
+                        ? parseCondition(clause.group(3) + " == " + clause.group(4))
+                        : parseCondition(clause.group(3));
+                } else if (clause.group(5) != null) {
+                    sort = new Template.Sort(clause.group(5), Template.segments(clause.group(5)),
+                        "desc".equals(clause.group(6)));
+                } else if (clause.group(1).equals("limit")) {
+                    limit = Integer.parseInt(clause.group(2));
+                } else {
+                    offset = Integer.parseInt(clause.group(2));
+                }
+            }
+            blocks.push(new Block(tagSource, new ForHeader(matcher.group(1), matcher.group(2),
+                where, sort, limit, offset, line)));
+        } else if ((matcher = ifPattern.matcher(tagBody)).matches()) {
+            blocks.push(new Block(tagSource, new IfHeader(parseCondition(matcher.group(1).trim()), line)));
+        } else if (tagBody.equals("endfor") && blocks.peek().header instanceof ForHeader) {
+            closeBlock(blocks, true);
+        } else if (tagBody.equals("endif") && blocks.peek().header instanceof IfHeader) {
+            closeBlock(blocks, true);
+        } else {
+            // Unknown or unmatched tags are left in the output untouched
+            blocks.peek().addText(tagSource);
+        }
+    }
+
+    private void closeBlock(Deque<Block> blocks, boolean closed) {
+        Block block = blocks.pop();
+        Block parent = blocks.peek();
+        if (!closed) {
+            parent.addText(block.tagSource);
+            block.nodes().forEach(parent::add);
+            return;
+        }
+        if (block.header instanceof ForHeader loop) {
+            parent.add(new Template.For(loop.itemVar, loop.collection, Template.segments(loop.collection),
+                loop.where, loop.sort, loop.limit, loop.offset, block.nodes(), loop.line));
+        } else if (block.header instanceof IfHeader conditional) {
+            parent.add(new Template.If(conditional.condition, block.nodes(), conditional.line));
+        }
+    }
+
+    private Template.Condition parseCondition(String condition) {
+        if (condition.contains("==")) {
+            String[] parts = condition.split("==", 2);
+            String leftSide = parts[0].trim();
+            String rightSide = parts[1].trim();
+
+            // Remove quotes from right side if present (handle both single and double quotes)
+            if (rightSide.length() >= 2 &&
+                ((rightSide.startsWith("'") && rightSide.endsWith("'")) ||
+                 (rightSide.startsWith("\"") && rightSide.endsWith("\"")))) {
+                rightSide = rightSide.substring(1, rightSide.length() - 1);
+            }
+            return new Template.Condition(leftSide, Template.segments(leftSide), rightSide);
+        }
+        return new Template.Condition(condition, Template.segments(condition), null);
+    }
+
+    private record ForHeader(String itemVar, String collection, Template.Condition where, Template.Sort sort,
+                             int limit, int offset, int line) {
+    }
+
+    private record IfHeader(Template.Condition condition, int line) {
+    }
+
+    /**
+     * An open block (or the template root) whose nodes are still being collected
+     */
+    private static class Block {
+        final String tagSource;
+        final Object header;
+        private final List<Template.Node> nodes = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+
+        Block(String tagSource, Object header) {
+            this.tagSource = tagSource;
+            this.header = header;
+        }
+
+        void addText(String value) {
+            text.append(value);
+        }
+
+        void add(Template.Node node) {
+            if (node instanceof Template.Text literal) {
+                addText(literal.text());
+                return;
+            }
+            flushText();
+            nodes.add(node);
+        }
+
+        List<Template.Node> nodes() {
+            flushText();
+            return List.copyOf(nodes);
+        }
+
+        private void flushText() {
+            if (!text.isEmpty()) {
+                nodes.add(new Template.Text(text.toString()));
+                text.setLength(0);
+            }
+        }
+    }
+}
@@ -1,34 +1,214 @@
 package com.pinealpha.arc;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Template engine for processing Arc templates.
  * Handles variable substitution, conditionals, loops, and includes.
+ * Template files are compiled once into a node tree and cached by path and
+ * last-modified time; the cache survives rebuilds in watch mode and each file
+ * is checked for changes at most once per build.
+ * Only the variables a template (and its includes) actually reference are
+ * looked up for a page, and values are converted to text as they are rendered.
+ * Loops and includes that only read global variables render the same way on
+ * every page, so their output is rendered once and reused until a global changes.
+ * Template files that are rendered often can be promoted from the interpreted
+ * node tree to generated bytecode (see {@link TemplateBytecodeCompiler}).
+ * With profiling enabled, render time is recorded per template file and per
+ * directive (see {@link TemplateProfiler}); profiled builds are always interpreted.
+ * <p>
+ * A build registers its global variables first and then renders. Registered
+ * globals are frozen into an immutable snapshot (collections become unmodifiable
+ * lists of unmodifiable maps) before the first render, after which templates can be
+ * rendered from many threads at once. Registering globals or starting a build must
+ * not overlap with rendering.
  */
 public class TemplateEngine {
-    
-    private final Map<String, Object> globalVariables = new HashMap<>();
-    private final Pattern includePattern = Pattern.compile(Constants.INCLUDE_PATTERN);
-    private final Pattern ifPattern = Pattern.compile(Constants.IF_PATTERN, Pattern.DOTALL);
-    private final Pattern forPattern = Pattern.compile(Constants.FOR_PATTERN, Pattern.DOTALL);
-    
-    /**
-     * Register a global variable that will be available in all templates
+
+    // Globals as registered, and their frozen values for the names frozen so far
+    private final Map<String, Object> registeredGlobals = new HashMap<>();
+    private final Map<String, Object> frozenGlobals = new HashMap<>();
+    private volatile Map<String, Object> globalVariables = Map.of();
+    private volatile boolean globalsChanged = false;
+
+    private final Map<Path, CachedTemplate> templateCache = new ConcurrentHashMap<>();
+    private final Map<FragmentKey, Set<String>> fragmentVariables = new ConcurrentHashMap<>();
+    private final Map<FragmentKey, String> fragmentCache = new ConcurrentHashMap<>();
+    // Indexed where/sort queries over global collections, by collection identity
+    private final Map<CollectionKey, CollectionQuery> collectionQueries = new ConcurrentHashMap<>();
+    // Key field path of the collections templates can look items up in, by collection name
+    private volatile Map<String, List<String>> collectionKeys = Map.of();
+    private final TemplateCompiler compiler = new TemplateCompiler();
+    private final TemplateBytecodeCompiler bytecodeCompiler = new TemplateBytecodeCompiler();
+    private volatile long buildGeneration = 0;
+    private volatile int bytecodeThreshold = -1;
+    private volatile TemplateProfiler profiler;
+
+    /**
+     * Register a global variable that will be available in all templates.
+     * The value is copied into an immutable snapshot before the next render, so later
+     * changes to it are not seen by templates unless it is registered again.
      * @param name Variable name
      * @param value Variable value
      */
-    public void registerGlobalVariable(String name, Object value) {
-        globalVariables.put(name, value);
+    public synchronized void registerGlobalVariable(String name, Object value) {
+        registeredGlobals.put(name, value);
+        frozenGlobals.remove(name);
+        globalsChanged = true;
+        fragmentCache.clear();
+        collectionQueries.clear();
+    }
+
+    /**
+     * Declare the key field of collections, so that templates can look items up by
+     * key: with authors keyed by id, {{ authors[post.author].name }} renders the name
+     * of the author whose id is the post's author. Lookups in global collections go
+     * through a hash index built once per build. Replaces earlier declarations.
+     * @param keys Key field (a dotted path) by collection name
+     */
+    public synchronized void setCollectionKeys(Map<String, String> keys) {
+        Map<String, List<String>> segments = new HashMap<>();
+        keys.forEach((name, field) -> segments.put(name, Template.segments(field)));
+        collectionKeys = Map.copyOf(segments);
+        fragmentCache.clear();
+    }
+
+    /**
+     * Get the frozen value of a global variable
+     * @param name Variable name
+     * @return The value, or null if no such global is registered
+     */
+    public Object getGlobalVariable(String name) {
+        return globals().get(name);
+    }
+
+    /**
+     * Check whether a global variable is registered (its value may be null)
+     */
+    public boolean hasGlobalVariable(String name) {
+        return globals().containsKey(name);
+    }
+
+    /**
+     * Freeze the registered globals into the immutable snapshot templates render
+     * against. Renders freeze pending registrations themselves; calling this at the
+     * end of the registration phase keeps the copying out of the render phase.
+     */
+    public synchronized void freezeGlobals() {
+        if (!globalsChanged) {
+            return;
+        }
+        Map<String, Object> snapshot = new HashMap<>();
+        for (Map.Entry<String, Object> entry : registeredGlobals.entrySet()) {
+            Object frozen = frozenGlobals.containsKey(entry.getKey())
+                ? frozenGlobals.get(entry.getKey())
+                : freeze(entry.getValue());
+            frozenGlobals.put(entry.getKey(), frozen);
+            snapshot.put(entry.getKey(), frozen);
+        }
+        globalVariables = Collections.unmodifiableMap(snapshot);
+        globalsChanged = false;
+    }
+
+    private Map<String, Object> globals() {
+        if (globalsChanged) {
+            freezeGlobals();
+        }
+        return globalVariables;
+    }
+
+    /**
+     * Deep-copy a value into unmodifiable lists and maps. Other values are
+     * expected to be immutable (strings, numbers, booleans). Content items and data
+     * files are immutable already, and copying them would load their bodies or
+     * materialize the whole file.
+     */
+    private static Object freeze(Object value) {
+        if (value instanceof ContentMetadata || value instanceof JsonData.Node) {
+            return value;
+        }
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                copy.put(entry.getKey(), freeze(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(copy);
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object item : list) {
+                copy.add(freeze(item));
+            }
+            return Collections.unmodifiableList(copy);
+        }
+        return value;
     }
-    
+
+    /**
+     * Set after how many renders a template file is compiled to bytecode.
+     * 0 compiles template files on first use; a negative value (the default)
+     * keeps every template interpreted.
+     * @param renders Number of interpreted renders before a template is compiled
+     */
+    public void setBytecodeThreshold(int renders) {
+        this.bytecodeThreshold = renders;
+    }
+
+    /**
+     * Record render time per template file and directive from now on
+     */
+    public synchronized void enableProfiling() {
+        if (profiler == null) {
+            profiler = new TemplateProfiler();
+        }
+    }
+
+    /**
+     * Get the profiler recording render times
+     * @return The profiler, or null if profiling is not enabled
+     */
+    public TemplateProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Start a new build. Cached templates are kept, but each one is checked
+     * against its file's modification time again the next time it is used.
+     */
+    public void beginBuild() {
+        buildGeneration++;
+        fragmentVariables.clear();
+        fragmentCache.clear();
+        collectionQueries.clear();
+    }
+
+    /**
+     * Drop all compiled templates so that every template file is recompiled
+     */
+    public void clearTemplateCache() {
+        templateCache.clear();
+        fragmentVariables.clear();
+        fragmentCache.clear();
+    }
+
     /**
      * Process a template with the given variables
      * @param template The template content
@@ -37,186 +217,521 @@ public class TemplateEngine {
      * @param templatesDir Directory containing template files
      * @return The processed template
      */
-    public String processTemplate(String template, Map<String, String> pageVariables, 
+    public String processTemplate(String template, Map<String, ?> pageVariables,
                                   String content, Path templatesDir) throws IOException {
-        // Combine global and page-specific variables
-        Map<String, Object> allVariables = new HashMap<>(globalVariables);
-        allVariables.putAll(pageVariables);
-        allVariables.put(Constants.CONTENT_VAR, content);
-        
-        // Process in order: includes -> loops -> conditionals -> variables
-        String result = processIncludes(template, templatesDir);
-        result = processLoops(result, allVariables);
-        result = processConditionals(result, allVariables);
-        result = processVariables(result, allVariables);
-        
-        return result;
-    }
-    
-    /**
-     * Process include directives in the template
-     */
-    private String processIncludes(String content, Path templatesDir) throws IOException {
-        Matcher matcher = includePattern.matcher(content);
-        StringBuilder result = new StringBuilder();
-        
-        while (matcher.find()) {
-            String includeFile = matcher.group(1);
-            Path includePath = templatesDir.resolve(includeFile);
-            
-            if (!Files.exists(includePath)) {
-                throw new IOException("Include file not found: " + includePath);
+        StringWriter out = new StringWriter();
+        render(compiler.compile(template, null), null, pageVariables, content, templatesDir, out);
+        return out.toString();
+    }
+
+    /**
+     * Process a template file with the given variables, compiling it on first use
+     * @param templatePath Path of the template file
+     * @param pageVariables Page-specific variables
+     * @param content The main content to inject
+     * @param templatesDir Directory containing template files
+     * @return The processed template
+     */
+    public String processTemplateFile(Path templatePath, Map<String, ?> pageVariables,
+                                      String content, Path templatesDir) throws IOException {
+        StringWriter out = new StringWriter();
+        processTemplateFile(templatePath, pageVariables, content, templatesDir, out);
+        return out.toString();
+    }
+
+    /**
+     * Process a template file and stream the output to a writer as it is rendered,
+     * so no String holding the whole page is built
+     * @param templatePath Path of the template file
+     * @param pageVariables Page-specific variables
+     * @param content The main content to inject
+     * @param templatesDir Directory containing template files
+     * @param out Destination for the rendered output
+     */
+    public void processTemplateFile(Path templatePath, Map<String, ?> pageVariables,
+                                    String content, Path templatesDir, Writer out) throws IOException {
+        CachedTemplate cached = loadCached(templatePath);
+        render(cached.template, cached, pageVariables, content, templatesDir, out);
+    }
+
+    private void render(Template template, CachedTemplate cached, Map<String, ?> pageVariables,
+                        String content, Path templatesDir, Writer out) throws IOException {
+        // Only the page variables the template references are put in the page frame;
+        // page variables shadow globals, and content shadows both
+        Map<String, Object> variables = new HashMap<>();
+        for (String name : referencedVariables(template, templatesDir)) {
+            if (Constants.CONTENT_VAR.equals(name)) {
+                variables.put(name, content);
+            } else if (pageVariables.containsKey(name)) {
+                variables.put(name, pageVariables.get(name));
+            }
+        }
+
+        TemplateScope scope = new TemplateScope(globals()).push(variables);
+        if (profiler != null) {
+            // Generated classes don't report their directives, so profiled renders stay interpreted
+            renderProfiled(template, scope, templatesDir, profiler.counting(out));
+        } else if (cached != null) {
+            renderTemplate(cached, scope, templatesDir, out);
+        } else {
+            renderNodes(template.nodes(), scope, templatesDir, out);
+        }
+    }
+
+    /**
+     * Render a template file, through its generated class once it has been promoted
+     */
+    private void renderTemplate(CachedTemplate cached, TemplateScope scope,
+                                Path templatesDir, Writer out) throws IOException {
+        CompiledTemplate compiled = promote(cached, templatesDir);
+        if (compiled != null) {
+            compiled.render(scope, out);
+        } else {
+            renderNodes(cached.template.nodes(), scope, templatesDir, out);
+        }
+    }
+
+    private void renderProfiled(Template template, TemplateScope scope,
+                                Path templatesDir, Writer out) throws IOException {
+        TemplateProfiler.Sample sample = profiler.startTemplate(template.source(), out);
+        try {
+            renderNodes(template.nodes(), scope, templatesDir, out);
+        } finally {
+            sample.stop();
+        }
+    }
+
+    /**
+     * Count a render of a template file and compile it to bytecode once it reaches
+     * the threshold. Templates that fail to compile stay interpreted.
+     * @return The generated class, or null while the template is interpreted
+     */
+    private CompiledTemplate promote(CachedTemplate cached, Path templatesDir) {
+        if (bytecodeThreshold < 0 || cached.bytecodeFailed) {
+            return null;
+        }
+        Promotion promotion = cached.promotion;
+        if (promotion != null && templatesDir.equals(promotion.templatesDir())) {
+            return promotion.compiled();
+        }
+        if (cached.renders.incrementAndGet() <= bytecodeThreshold) {
+            return null;
+        }
+
+        // Threads racing past the threshold may each compile the template; any result will do
+        try {
+            CompiledTemplate compiled = bytecodeCompiler.compile(cached.template, new EngineFragments(templatesDir));
+            cached.promotion = new Promotion(compiled, templatesDir);
+            return compiled;
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            System.err.println("Rendering " + cached.template.source() + " interpreted, bytecode compilation failed: " + e);
+            cached.bytecodeFailed = true;
+            return null;
+        }
+    }
+
+    /**
+     * Get the names of all variables a template file reads, including those read by
+     * its (nested) includes
+     * @param templatePath Path of the template file
+     * @param templatesDir Directory includes are resolved against
+     */
+    public Set<String> referencedVariables(Path templatePath, Path templatesDir) throws IOException {
+        return referencedVariables(loadTemplate(templatePath), templatesDir);
+    }
+
+    /**
+     * Get the files a template file includes, directly or through other includes
+     * @param templatePath Path of the template file
+     * @param templatesDir Directory includes are resolved against
+     */
+    public Set<Path> includedFiles(Path templatePath, Path templatesDir) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        collectIncludedFiles(loadTemplate(templatePath), templatesDir, files);
+        return files;
+    }
+
+    private void collectIncludedFiles(Template template, Path templatesDir, Set<Path> files) throws IOException {
+        for (String include : template.includes()) {
+            Path includePath = templatesDir.resolve(include);
+            if (Files.exists(includePath) && files.add(includePath)) {
+                collectIncludedFiles(loadTemplate(includePath), templatesDir, files);
+            }
+        }
+    }
+
+    /**
+     * Get the names of all variables a template reads, including those read by its
+     * (nested) includes. The result is cached for template files until the
+     * template or one of its nested includes changes.
+     */
+    private Set<String> referencedVariables(Template template, Path templatesDir) throws IOException {
+        if (template.includes().isEmpty()) {
+            return template.variables();
+        }
+        CachedTemplate cached = template.source() != null ? templateCache.get(template.source()) : null;
+        References references = cached != null && cached.template == template ? cached.references : null;
+        if (references != null && includesUnchanged(references.resolvedIncludes())) {
+            return references.variables();
+        }
+
+        Set<String> names = new HashSet<>();
+        Map<Path, Template> resolvedIncludes = new HashMap<>();
+        collectReferencedVariables(template, templatesDir, names, resolvedIncludes);
+        if (cached != null && cached.template == template) {
+            cached.references = new References(Set.copyOf(names), Map.copyOf(resolvedIncludes));
+        }
+        return names;
+    }
+
+    private void collectReferencedVariables(Template template, Path templatesDir, Set<String> names,
+                                            Map<Path, Template> resolvedIncludes) throws IOException {
+        names.addAll(template.variables());
+        for (String include : template.includes()) {
+            Path includePath = templatesDir.resolve(include);
+            if (resolvedIncludes.containsKey(includePath) || !Files.exists(includePath)) {
+                continue;
             }
-            
-            String includeContent = Files.readString(includePath);
-            // Recursively process includes in the included file
-            String processedContent = processIncludes(includeContent, templatesDir);
-            matcher.appendReplacement(result, Matcher.quoteReplacement(processedContent));
-        }
-        matcher.appendTail(result);
-        
-        return result.toString();
-    }
-    
-    private String processConditionals(String content, Map<String, Object> variables) {
-        Matcher matcher = ifPattern.matcher(content);
-        StringBuilder result = new StringBuilder();
-        
-        while (matcher.find()) {
-            String condition = matcher.group(1).trim();
-            String ifContent = matcher.group(2);
-            
-            boolean conditionMet = evaluateCondition(condition, variables);
-            String replacement = conditionMet ? ifContent : "";
-            
-            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
-        }
-        matcher.appendTail(result);
-        
-        return result.toString();
-    }
-    
-    private boolean evaluateCondition(String condition, Map<String, Object> variables) {
-        if (condition.contains("==")) {
-            String[] parts = condition.split("==", 2);
-            if (parts.length == 2) {
-                String leftSide = parts[0].trim();
-                String rightSide = parts[1].trim();
-                
-                // Remove quotes from right side if present (handle both single and double quotes)
-                if ((rightSide.startsWith("'") && rightSide.endsWith("'")) ||
-                    (rightSide.startsWith("\"") && rightSide.endsWith("\""))) {
-                    rightSide = rightSide.substring(1, rightSide.length() - 1);
+            Template included = loadTemplate(includePath);
+            resolvedIncludes.put(includePath, included);
+            collectReferencedVariables(included, templatesDir, names, resolvedIncludes);
+        }
+    }
+
+    private boolean includesUnchanged(Map<Path, Template> resolvedIncludes) throws IOException {
+        for (Map.Entry<Path, Template> entry : resolvedIncludes.entrySet()) {
+            try {
+                if (loadTemplate(entry.getKey()) != entry.getValue()) {
+                    return false;
                 }
-                
-                Object leftValue = getVariableValue(leftSide, variables);
-                boolean result = leftValue != null && leftValue.toString().equals(rightSide);
-                return result;
+            } catch (NoSuchFileException e) {
+                return false;
             }
         }
-        
-        // Fall back to simple existence check
-        Object value = getVariableValue(condition, variables);
-        return value != null && !value.toString().isEmpty();
-    }
-    
-    private String processLoops(String template, Map<String, Object> variables) {
-        StringBuilder result = new StringBuilder(template);
-        Matcher matcher = forPattern.matcher(template);
-        
-        while (matcher.find()) {
-            String itemVar = matcher.group(1);
-            String collectionName = matcher.group(2);
-            String limitStr = matcher.group(3);
-            String loopContent = matcher.group(4);
-
-            Object collection = variables.get(collectionName);
-            StringBuilder loopResult = new StringBuilder();
-
-            if (collection instanceof List<?> items) {
-                int limit = limitStr != null ? Integer.parseInt(limitStr) : items.size();
-                int count = 0;
-                for (Object item : items) {
-                    if (count++ >= limit) break;
-                    Map<String, Object> loopVariables = new HashMap<>(variables);
-                    loopVariables.put(itemVar, item);
-                    
-                    String itemContent = processConditionals(loopContent, loopVariables);
-                    itemContent = processLoopVariables(itemContent, itemVar, item);
-                    loopResult.append(itemContent);
+        return true;
+    }
+
+    /**
+     * Get the compiled template for a file. The file is compiled on first use and
+     * recompiled when its modification time or size has changed; the check is done
+     * at most once per build.
+     */
+    private Template loadTemplate(Path templatePath) throws IOException {
+        return loadCached(templatePath).template;
+    }
+
+    private CachedTemplate loadCached(Path templatePath) throws IOException {
+        CachedTemplate cached = templateCache.get(templatePath);
+        if (cached != null && cached.checkedGeneration == buildGeneration) {
+            return cached;
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(templatePath, BasicFileAttributes.class);
+        if (cached != null && cached.lastModified.equals(attributes.lastModifiedTime())
+                && cached.size == attributes.size()) {
+            cached.checkedGeneration = buildGeneration;
+            return cached;
+        }
+
+        Template template = compiler.compile(Files.readString(templatePath), templatePath);
+        cached = new CachedTemplate(template, attributes.lastModifiedTime(), attributes.size(), buildGeneration);
+        templateCache.put(templatePath, cached);
+        return cached;
+    }
+
+    private void renderNodes(List<Template.Node> nodes, TemplateScope scope,
+                             Path templatesDir, Writer out) throws IOException {
+        for (Template.Node node : nodes) {
+            if (profiler != null && !(node instanceof Template.Text || node instanceof Template.Variable
+                    || node instanceof Template.Lookup || node instanceof Template.Asset)) {
+                TemplateProfiler.Sample sample = profiler.startDirective(node, out);
+                try {
+                    renderNode(node, scope, templatesDir, out);
+                } finally {
+                    sample.stop();
                 }
+            } else {
+                renderNode(node, scope, templatesDir, out);
             }
-            
-            int start = matcher.start();
-            int end = matcher.end();
-            result.replace(start, end, loopResult.toString());
-            matcher = forPattern.matcher(result);
-        }
-        
-        return result.toString();
-    }
-    
-    private String processLoopVariables(String content, String itemVar, Object item) {
-        if (item instanceof Map<?, ?> itemMap) {
-            for (Map.Entry<?, ?> entry : itemMap.entrySet()) {
-                String key = entry.getKey().toString();
-                String placeholder = String.format(Constants.VARIABLE_PATTERN, 
-                    itemVar + "\\." + key);
-                String replacement = entry.getValue() != null ? 
-                    entry.getValue().toString() : "";
-                content = content.replaceAll(placeholder, 
-                    Matcher.quoteReplacement(replacement));
+        }
+    }
+
+    private void renderNode(Template.Node node, TemplateScope scope,
+                            Path templatesDir, Writer out) throws IOException {
+        switch (node) {
+            case Template.Text text -> out.write(text.text());
+            case Template.Variable variable -> renderVariable(variable, scope, out);
+            case Template.Lookup lookup -> out.write(lookupText(lookup, scope));
+            case Template.Asset asset ->
+                out.write(TemplateScope.asset(scope.get(Constants.ASSET_MANIFEST_VAR), asset.path()));
+            case Template.If conditional -> {
+                if (evaluateCondition(conditional.condition(), scope)) {
+                    renderNodes(conditional.body(), scope, templatesDir, out);
+                }
             }
+            case Template.For loop -> renderFragment(loop, scope, templatesDir, out);
+            case Template.Include include -> renderFragment(include, scope, templatesDir, out);
+        }
+    }
+
+    /**
+     * Render a loop or include. If every variable it reads resolves to a global,
+     * the output is the same on every page: it is rendered once and then reused.
+     */
+    private void renderFragment(Template.Node node, TemplateScope scope,
+                                Path templatesDir, Writer out) throws IOException {
+        if (!readsOnlyGlobals(node, scope, templatesDir)) {
+            renderFragmentNode(node, scope, templatesDir, out);
+            return;
+        }
+
+        // Threads racing on the first render of a fragment produce the same output
+        FragmentKey key = new FragmentKey(node);
+        String cached = fragmentCache.get(key);
+        if (cached == null) {
+            StringWriter fragment = new StringWriter();
+            renderFragmentNode(node, scope, templatesDir, profiler != null ? profiler.counting(fragment) : fragment);
+            cached = fragment.toString();
+            fragmentCache.putIfAbsent(key, cached);
+        }
+        out.write(cached);
+    }
+
+    private void renderFragmentNode(Template.Node node, TemplateScope scope,
+                                    Path templatesDir, Writer out) throws IOException {
+        if (node instanceof Template.For loop) {
+            renderLoop(loop, scope, templatesDir, out);
+        } else if (node instanceof Template.Include include) {
+            renderInclude(include, scope, templatesDir, out);
         }
-        return content;
-    }
-    
-    private String processVariables(String template, Map<String, Object> variables) {
-        String result = template;
-        
-        // First, handle nested properties (variables with dots)
-        Pattern nestedPattern = Pattern.compile("\\{\\{\\s*([a-zA-Z_][a-zA-Z0-9_]*\\.[a-zA-Z0-9_.]+)\\s*\\}\\}");
-        Matcher nestedMatcher = nestedPattern.matcher(result);
-        
-        while (nestedMatcher.find()) {
-            String fullPath = nestedMatcher.group(1);
-            Object value = getVariableValue(fullPath, variables);
-            String replacement = value != null ? value.toString() : "";
-            result = result.replace(nestedMatcher.group(0), replacement);
-            nestedMatcher = nestedPattern.matcher(result); // Reset matcher after replacement
-        }
-        
-        // Then handle simple variables (without dots)
-        for (Map.Entry<String, Object> entry : variables.entrySet()) {
-            String placeholder = String.format(Constants.VARIABLE_PATTERN, entry.getKey());
-            String replacement = entry.getValue() != null ? 
-                entry.getValue().toString() : "";
-            result = result.replaceAll(placeholder, 
-                Matcher.quoteReplacement(replacement));
-        }
-        
-        return result;
-    }
-    
-    private Object getVariableValue(String path, Map<String, Object> variables) {
-        if (variables.containsKey(path)) {
-            return variables.get(path);
-        }
-        
-        // Handle nested properties
-        String[] parts = path.split("\\.");
-        Object current = variables;
-        
-        for (String part : parts) {
-            if (!(current instanceof Map<?, ?>)) {
-                return null;
+    }
+
+    private boolean readsOnlyGlobals(Template.Node node, TemplateScope scope, Path templatesDir) throws IOException {
+        Set<String> names = fragmentVariables.get(new FragmentKey(node));
+        if (names == null) {
+            names = new HashSet<>();
+            Set<String> includes = new HashSet<>();
+            compiler.scanReferences(node, names, includes);
+            for (String include : includes) {
+                Path includePath = templatesDir.resolve(include);
+                if (Files.exists(includePath)) {
+                    Template included = loadTemplate(includePath);
+                    names.addAll(referencedVariables(included, templatesDir));
+                }
             }
-            current = ((Map<?, ?>) current).get(part);
-            if (current == null) {
-                return null;
+            fragmentVariables.put(new FragmentKey(node), Set.copyOf(names));
+        }
+
+        for (String name : names) {
+            if (!scope.isGlobal(name)) {
+                return false;
             }
         }
-        
-        return current;
+        return true;
+    }
+
+    private void renderInclude(Template.Include include, TemplateScope scope,
+                               Path templatesDir, Writer out) throws IOException {
+        Path includePath = templatesDir.resolve(include.name());
+        CachedTemplate included;
+        try {
+            included = loadCached(includePath);
+        } catch (NoSuchFileException e) {
+            throw new IOException("Include file not found: " + includePath);
+        }
+        if (profiler != null) {
+            renderProfiled(included.template, scope, templatesDir, out);
+        } else {
+            renderTemplate(included, scope, templatesDir, out);
+        }
+    }
+
+    private void renderVariable(Template.Variable variable, TemplateScope scope,
+                                Writer out) throws IOException {
+        Object value = scope.resolve(variable.path(), variable.segments());
+        if (variable.segments().size() == 1) {
+            out.write(TemplateScope.text(value, scope, variable.path(), variable.source()));
+        } else if (value != null) {
+            out.write(value.toString());
+        }
+    }
+
+    /**
+     * The text of a keyed lookup; a missing key, item or field renders as empty text
+     */
+    private String lookupText(Template.Lookup lookup, TemplateScope scope) {
+        Object key = scope.resolve(lookup.key(), lookup.keySegments());
+        Object value = key != null ? lookup(lookup, scope.resolve(lookup.collection(), lookup.segments()),
+            key.toString(), scope) : null;
+        for (int i = 0; i < lookup.fields().size() && value != null; i++) {
+            value = TemplateScope.property(value, lookup.fields().get(i));
+        }
+        return value != null ? value.toString() : "";
+    }
+
+    /**
+     * The entry of a map under a key, or the item of a keyed collection with that key
+     */
+    private Object lookup(Template.Lookup lookup, Object collection, String key, TemplateScope scope) {
+        if (collection instanceof Map<?, ?> map) {
+            return map.get(key);
+        }
+        List<String> keyField = collectionKeys.get(lookup.collection());
+        if (!(collection instanceof List<?> items) || keyField == null) {
+            return null;
+        }
+        if (scope.isGlobal(lookup.segments().get(0)) && scope.isGlobal(lookup.collection())) {
+            return collectionQueries.computeIfAbsent(new CollectionKey(items), k -> new CollectionQuery(items))
+                .find(keyField, key);
+        }
+        return CollectionQuery.find(items, keyField, key);
+    }
+
+    private boolean evaluateCondition(Template.Condition condition, TemplateScope scope) {
+        Object value = scope.resolve(condition.path(), condition.segments());
+        if (condition.expected() != null) {
+            return TemplateScope.matches(value, condition.expected());
+        }
+
+        // Simple existence check
+        return TemplateScope.isTruthy(value);
+    }
+
+    /**
+     * Render a loop body once per item. A single frame binds the loop item and is
+     * rebound for each iteration; nested loops push their own frame on top of it.
+     */
+    private void renderLoop(Template.For loop, TemplateScope scope,
+                            Path templatesDir, Writer out) throws IOException {
+        Object collection = scope.resolve(loop.collection(), loop.segments());
+        List<?> items = select(loop, collection, scope);
+        if (items.isEmpty()) {
+            return;
+        }
+
+        TemplateScope frame = scope.push(loop.itemVar());
+        for (Object item : items) {
+            frame.set(item);
+            renderNodes(loop.body(), frame, templatesDir, out);
+        }
+    }
+
+    /**
+     * The items a loop renders. Where and sort clauses over a global collection use
+     * the collection's indexed query, shared by every page of the build; other
+     * collections are filtered and sorted directly.
+     */
+    private List<?> select(Template.For loop, Object collection, TemplateScope scope) {
+        if (loop.where() == null && loop.sort() == null) {
+            return TemplateScope.slice(collection, loop.offset(), loop.limit());
+        }
+        if (!(collection instanceof List<?> items)) {
+            return List.of();
+        }
+        if (scope.isGlobal(loop.segments().get(0)) && scope.isGlobal(loop.collection())) {
+            return collectionQueries.computeIfAbsent(new CollectionKey(items), key -> new CollectionQuery(items))
+                .select(loop);
+        }
+        return CollectionQuery.evaluate(items, loop);
+    }
+
+    /**
+     * A compiled template file together with the file state it was compiled from
+     */
+    private static class CachedTemplate {
+        final Template template;
+        final FileTime lastModified;
+        final long size;
+        volatile long checkedGeneration;
+
+        // Variables read by the template and its nested includes
+        volatile References references;
+
+        // Bytecode tier: render count and the generated class once promoted
+        final AtomicInteger renders = new AtomicInteger();
+        volatile Promotion promotion;
+        volatile boolean bytecodeFailed;
+
+        CachedTemplate(Template template, FileTime lastModified, long size, long checkedGeneration) {
+            this.template = template;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.checkedGeneration = checkedGeneration;
+        }
+    }
+
+    /**
+     * The variables read by a template and its nested includes, valid while every
+     * include still resolves to the same compiled template
+     */
+    private record References(Set<String> variables, Map<Path, Template> resolvedIncludes) {
+    }
+
+    /**
+     * A template's generated class, bound to the templates directory its includes resolve against
+     */
+    private record Promotion(CompiledTemplate compiled, Path templatesDir) {
+    }
+
+    /**
+     * Identity of a loop or include node in the fragment caches. Nodes are records,
+     * so equal nodes of different templates must not share an entry.
+     */
+    private record FragmentKey(Template.Node node) {
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof FragmentKey key && key.node == node;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(node);
+        }
+    }
+
+    /**
+     * Identity key of a global collection; list equality would compare every item
+     */
+    private record CollectionKey(List<?> collection) {
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof CollectionKey key && key.collection == collection;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(collection);
+        }
+    }
+
+    /**
+     * Gives generated template classes access to the fragment cache and includes
+     */
+    private class EngineFragments implements TemplateBytecodeCompiler.Fragments {
+        private final Path templatesDir;
+
+        EngineFragments(Path templatesDir) {
+            this.templatesDir = templatesDir;
+        }
+
+        @Override
+        public boolean isReusable(Template.Node node, TemplateScope scope) throws IOException {
+            return readsOnlyGlobals(node, scope, templatesDir);
+        }
+
+        @Override
+        public void render(Template.Node node, TemplateScope scope, Writer out) throws IOException {
+            renderFragment(node, scope, templatesDir, out);
+        }
+
+        @Override
+        public List<?> select(Template.For loop, Object collection, TemplateScope scope) {
+            return TemplateEngine.this.select(loop, collection, scope);
+        }
+
+        @Override
+        public String lookup(Template.Lookup lookup, TemplateScope scope) {
+            return lookupText(lookup, scope);
+        }
     }
-} 
\ No newline at end of file
+}
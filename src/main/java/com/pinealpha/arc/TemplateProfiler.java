@@ -0,0 +1,224 @@
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records where template rendering time goes. For every template file and every
+ * {% for %}, {% if %} and {% include %} site it keeps the cumulative wall time,
+ * the number of renders and the number of UTF-8 bytes written. Times are inclusive:
+ * a loop's time contains the time of the includes rendered in its body.
+ */
+public class TemplateProfiler {
+
+    private static final String INLINE_TEMPLATE = "<inline template>";
+
+    private final Map<Site, Stats> stats = new ConcurrentHashMap<>();
+    private final LongAdder pageNanos = new LongAdder();
+    private final ThreadLocal<Deque<Path>> templates = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * Start timing the render of a template file. Directives rendered until the
+     * sample is stopped are attributed to this file.
+     * @param template The template file, or null for inline templates
+     * @param out The writer the template renders into
+     */
+    public Sample startTemplate(Path template, Writer out) {
+        Deque<Path> stack = templates.get();
+        boolean page = stack.isEmpty();
+        stack.push(template != null ? template : Path.of(INLINE_TEMPLATE));
+        return new Sample(new Site(stack.peek(), 0, null), out, page);
+    }
+
+    /**
+     * Start timing the render of a for, if or include directive of the current template file
+     * @param node The directive
+     * @param out The writer the directive renders into
+     */
+    public Sample startDirective(Template.Node node, Writer out) {
+        Path template = templates.get().peek();
+        return switch (node) {
+            case Template.For loop -> new Sample(new Site(template, loop.line(), describe(loop)), out, false);
+            case Template.If conditional -> new Sample(new Site(template, conditional.line(),
+                "if " + describe(conditional.condition())), out, false);
+            case Template.Include include -> new Sample(new Site(template, include.line(),
+                "include \"" + include.name() + "\""), out, false);
+            default -> throw new IllegalArgumentException("Not a profiled directive: " + node);
+        };
+    }
+
+    /**
+     * Wrap a writer so that the bytes written through it can be attributed to the
+     * templates and directives rendered into it
+     */
+    public Writer counting(Writer out) {
+        return out instanceof CountingWriter ? out : new CountingWriter(out);
+    }
+
+    /**
+     * Forget everything recorded so far
+     */
+    public void reset() {
+        stats.clear();
+        pageNanos.reset();
+    }
+
+    /**
+     * Build a report of all template files and directive sites, most expensive first
+     */
+    public String report() {
+        List<Map.Entry<Site, Stats>> entries = new ArrayList<>(stats.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<Site, Stats> e) -> e.getValue().nanos.sum()).reversed());
+        double total = Math.max(1, pageNanos.sum());
+
+        StringBuilder report = new StringBuilder();
+        report.append("-------- TEMPLATE PROFILE --------\n");
+        report.append(String.format("%12s %7s %9s %12s  %s%n", "Time (ms)", "Share", "Calls", "Bytes", "Site"));
+        for (Map.Entry<Site, Stats> entry : entries) {
+            Stats site = entry.getValue();
+            long nanos = site.nanos.sum();
+            report.append(String.format("%12.2f %6.1f%% %9d %12d  %s%n", nanos / 1e6, 100 * nanos / total,
+                site.calls.sum(), site.bytes.sum(), entry.getKey().label()));
+        }
+        report.append(String.format("Total page render time: %.2f ms (shares are of this total)%n", pageNanos.sum() / 1e6));
+        return report.toString();
+    }
+
+    private String describe(Template.For loop) {
+        StringBuilder directive = new StringBuilder("for ").append(loop.itemVar()).append(" in ").append(loop.collection());
+        if (loop.where() != null) {
+            directive.append(" where ").append(describe(loop.where()));
+        }
+        if (loop.sort() != null) {
+            directive.append(" sort ").append(loop.sort().path()).append(loop.sort().descending() ? " desc" : "");
+        }
+        if (loop.offset() > 0) {
+            directive.append(" offset ").append(loop.offset());
+        }
+        if (loop.limit() >= 0) {
+            directive.append(" limit ").append(loop.limit());
+        }
+        return directive.toString();
+    }
+
+    private String describe(Template.Condition condition) {
+        return condition.expected() == null
+            ? condition.path()
+            : condition.path() + " == '" + condition.expected() + "'";
+    }
+
+    /**
+     * A template file (line 0, no directive) or a directive at a line of a template file
+     */
+    private record Site(Path template, int line, String directive) {
+        String label() {
+            return directive == null ? template.toString() : template + ":" + line + " {% " + directive + " %}";
+        }
+    }
+
+    private static class Stats {
+        final LongAdder nanos = new LongAdder();
+        final LongAdder calls = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+    }
+
+    /**
+     * A single timed render of a template file or directive
+     */
+    public class Sample {
+        private final Site site;
+        private final Writer out;
+        private final boolean page;
+        private final long startBytes;
+        private final long startNanos;
+
+        private Sample(Site site, Writer out, boolean page) {
+            this.site = site;
+            this.out = out;
+            this.page = page;
+            this.startBytes = written(out);
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Stop timing and add the sample to its site
+         */
+        public void stop() {
+            long nanos = System.nanoTime() - startNanos;
+            Stats siteStats = stats.computeIfAbsent(site, key -> new Stats());
+            siteStats.nanos.add(nanos);
+            siteStats.calls.increment();
+            siteStats.bytes.add(written(out) - startBytes);
+            if (site.directive == null) {
+                templates.get().pop();
+                if (page) {
+                    pageNanos.add(nanos);
+                }
+            }
+        }
+
+        private long written(Writer writer) {
+            return writer instanceof CountingWriter counting ? counting.bytes : 0;
+        }
+    }
+
+    /**
+     * Counts the UTF-8 encoded size of everything written through it
+     */
+    private static class CountingWriter extends Writer {
+        private final Writer out;
+        private long bytes;
+
+        CountingWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            bytes += utf8Length((char) c);
+            out.write(c);
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                bytes += utf8Length(chars[i]);
+            }
+            out.write(chars, offset, length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                bytes += utf8Length(text.charAt(i));
+            }
+            out.write(text, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        // Each half of a surrogate pair counts 2 bytes, 4 for the encoded code point
+        private static int utf8Length(char c) {
+            if (c < 0x80) return 1;
+            if (c < 0x800 || Character.isSurrogate(c)) return 2;
+            return 3;
+        }
+    }
+}
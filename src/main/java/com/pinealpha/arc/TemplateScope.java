@@ -0,0 +1,185 @@
+package com.pinealpha.arc;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Variables visible while rendering a template.
+ * The root scope wraps the global variables and the page's variables are pushed
+ * on top of it. Each loop pushes one frame that binds the loop item and is updated
+ * in place on every iteration, so loops never copy the variables of the enclosing scopes.
+ */
+public class TemplateScope {
+
+    private final TemplateScope parent;
+    private final Map<String, ?> variables;
+    private final String name;
+    private Object value;
+
+    /**
+     * Create a root scope over a map of variables
+     * @param variables The variables visible in the scope
+     */
+    public TemplateScope(Map<String, ?> variables) {
+        this.parent = null;
+        this.variables = variables;
+        this.name = null;
+    }
+
+    private TemplateScope(TemplateScope parent, Map<String, ?> variables, String name) {
+        this.parent = parent;
+        this.variables = variables;
+        this.name = name;
+    }
+
+    /**
+     * Create a child frame over a map of variables that shadow the enclosing scopes
+     * @param variables The variables visible in the frame
+     * @return The new frame
+     */
+    public TemplateScope push(Map<String, ?> variables) {
+        return new TemplateScope(this, variables, null);
+    }
+
+    /**
+     * Create a child frame binding a single variable, initially null
+     * @param name The name bound by the frame
+     * @return The new frame
+     */
+    public TemplateScope push(String name) {
+        return new TemplateScope(this, null, name);
+    }
+
+    /**
+     * Rebind the variable of a frame created by {@link #push(String)}
+     */
+    public void set(Object value) {
+        this.value = value;
+    }
+
+    /**
+     * Check whether a variable is visible in this scope (its value may be null)
+     */
+    public boolean contains(String key) {
+        for (TemplateScope scope = this; scope != null; scope = scope.parent) {
+            if (scope.variables != null ? scope.variables.containsKey(key) : scope.name.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a variable resolves from the root scope, i.e. no frame pushed
+     * on top of the root binds it
+     */
+    public boolean isGlobal(String key) {
+        for (TemplateScope scope = this; scope.parent != null; scope = scope.parent) {
+            if (scope.variables != null ? scope.variables.containsKey(key) : scope.name.equals(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Look up a variable, searching the innermost frame first
+     * @return The value, or null if the variable is not visible
+     */
+    public Object get(String key) {
+        for (TemplateScope scope = this; scope != null; scope = scope.parent) {
+            if (scope.variables == null) {
+                if (scope.name.equals(key)) {
+                    return scope.value;
+                }
+            } else {
+                Object found = scope.variables.get(key);
+                if (found != null || scope.variables.containsKey(key)) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resolve a variable path such as post.title. A variable registered under the
+     * full dotted name wins over walking the segments.
+     * @param path The dotted path
+     * @param segments The path split on dots
+     * @return The value, or null if any segment is missing
+     */
+    public Object resolve(String path, List<String> segments) {
+        if (segments.size() == 1) {
+            return get(path);
+        }
+        if (contains(path)) {
+            return get(path);
+        }
+
+        // Handle nested properties
+        Object current = get(segments.get(0));
+        for (int i = 1; i < segments.size() && current != null; i++) {
+            current = property(current, segments.get(i));
+        }
+        return current;
+    }
+
+    /**
+     * Look up a key of a map value
+     * @return The value, or null if the target is not a map
+     */
+    public static Object property(Object target, String key) {
+        return target instanceof Map<?, ?> map ? map.get(key) : null;
+    }
+
+    /**
+     * The text a variable renders as: empty for null, unless the variable is unknown
+     * altogether, in which case its tag source is left in the output untouched
+     */
+    public static String text(Object value, TemplateScope scope, String name, String source) {
+        if (value != null) {
+            return value.toString();
+        }
+        return scope != null && !scope.contains(name) ? source : "";
+    }
+
+    /**
+     * The URL an {{ asset "path" }} tag renders as: the asset's entry in the asset manifest,
+     * or its plain URL under /assets/ when assets aren't fingerprinted or it has no entry
+     * @param manifest The asset manifest, a map from path to URL
+     */
+    public static String asset(Object manifest, String path) {
+        String name = path.startsWith("/") ? path.substring(1) : path;
+        Object url = property(manifest, name);
+        return url != null ? url.toString() : "/" + Constants.ASSETS_DIR + "/" + name;
+    }
+
+    /**
+     * Existence check used by {% if variable %}
+     */
+    public static boolean isTruthy(Object value) {
+        return value != null && !value.toString().isEmpty();
+    }
+
+    /**
+     * Equality check used by {% if variable == 'value' %}
+     */
+    public static boolean matches(Object value, String expected) {
+        return value != null && value.toString().equals(expected);
+    }
+
+    /**
+     * The items of a collection selected by a loop's offset and limit.
+     * Values that are not lists select nothing.
+     * @param limit Maximum number of items, or negative for no limit
+     */
+    public static List<?> slice(Object collection, int offset, int limit) {
+        if (!(collection instanceof List<?> items)) {
+            return List.of();
+        }
+        int from = Math.min(offset, items.size());
+        int to = limit >= 0 ? Math.min(items.size(), from + limit) : items.size();
+        return items.subList(from, to);
+    }
+}
@@ -0,0 +1,154 @@
+// ABOUTME: Verifies date-keyed collection sorting and the generated year/month archive pages
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.ArchiveTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.YearMonth;
+import java.util.*;
+
+public class ArchiveTest {
+
+    private static int failures = 0;
+
+    private static final String ARCHIVE_TEMPLATE =
+        "{{ archive.title }}|{{ url }}|"
+        + "{% for m in archive.months %}<{{ m.month_name }}:{{ m.count }}:{{ m.url }}>{% endfor %}"
+        + "{% for p in archive.items %}[{{ p.title }}]{% endfor %}";
+
+    public static void main(String[] args) throws Exception {
+        testIndexSortsNewestFirstWithUndatedLast();
+        testArchivePagesAreGenerated();
+        testNoArchivesWithoutTemplate();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testIndexSortsNewestFirstWithUndatedLast() {
+        ContentIndex index = new ContentIndex();
+        List<String[]> posts = List.of(
+            new String[] {"undated", null},
+            new String[] {"old", "2024-12-31"},
+            new String[] {"new", "2025-02-01"},
+            new String[] {"same-day-first", "2025-01-15"},
+            new String[] {"same-day-second", "2025-01-15"});
+        for (String[] post : posts) {
+            index.add("post", Map.of("title", post[0]), ContentIndex.dateKey(post[1]));
+        }
+
+        List<String> order = index.collections().get("post").stream().map(item -> item.get("title")).toList();
+        Map<YearMonth, List<Map<String, String>>> months = index.months("post");
+        boolean ok = order.equals(List.of("new", "same-day-first", "same-day-second", "old", "undated"))
+            && new ArrayList<>(months.keySet()).equals(List.of(
+                YearMonth.of(2025, 2), YearMonth.of(2025, 1), YearMonth.of(2024, 12)))
+            && months.get(YearMonth.of(2025, 1)).size() == 2;
+        if (ok) {
+            pass("testIndexSortsNewestFirstWithUndatedLast");
+        } else {
+            fail("testIndexSortsNewestFirstWithUndatedLast", "Got: " + order + " " + months.keySet());
+        }
+    }
+
+    static void testArchivePagesAreGenerated() throws Exception {
+        Path tmpDir = createTestSite("archive_template: archive.html\n");
+        try {
+            buildSite(tmpDir);
+
+            String year2025 = Files.readString(tmpDir.resolve("site/posts/2025/index.html"));
+            String may2025 = Files.readString(tmpDir.resolve("site/posts/2025/05/index.html"));
+            String june2025 = Files.readString(tmpDir.resolve("site/posts/2025/06/index.html"));
+            String year2024 = Files.readString(tmpDir.resolve("site/posts/2024/index.html"));
+            String note = Files.readString(tmpDir.resolve("site/note/2025/03/index.html"));
+            boolean ok = year2025.equals("2025|/posts/2025/|<June:1:/posts/2025/06/><May:2:/posts/2025/05/>[June][May 2][May 1]")
+                && may2025.equals("May 2025|/posts/2025/05/|[May 2][May 1]")
+                && june2025.equals("June 2025|/posts/2025/06/|[June]")
+                && year2024.equals("2024|/posts/2024/|<December:1:/posts/2024/12/>[December]")
+                && note.equals("March 2025|/note/2025/03/|[Note]")
+                && !Files.exists(tmpDir.resolve("site/2025"));
+            if (ok) {
+                pass("testArchivePagesAreGenerated");
+            } else {
+                fail("testArchivePagesAreGenerated", "Got: " + year2025 + " | " + may2025 + " | " + june2025
+                    + " | " + year2024 + " | " + note);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testNoArchivesWithoutTemplate() throws Exception {
+        Path tmpDir = createTestSite("");
+        try {
+            buildSite(tmpDir);
+            if (!Files.exists(tmpDir.resolve("site/posts/2025"))) {
+                pass("testNoArchivesWithoutTemplate");
+            } else {
+                fail("testNoArchivesWithoutTemplate", "Archive pages were generated without archive_template");
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static Path createTestSite(String siteConfig) throws IOException {
+        Path tmpDir = Files.createTempDirectory("arc-archive-test");
+        Path postsDir = tmpDir.resolve("app/posts");
+        Path pagesDir = tmpDir.resolve("app/pages");
+        Path templatesDir = tmpDir.resolve("app/templates");
+        Files.createDirectories(postsDir);
+        Files.createDirectories(pagesDir);
+        Files.createDirectories(templatesDir);
+        Files.createDirectories(tmpDir.resolve("site"));
+
+        Files.writeString(templatesDir.resolve("post.html"), "{{ content }}");
+        Files.writeString(templatesDir.resolve("archive.html"), ARCHIVE_TEMPLATE);
+        writePost(postsDir, "dec.md", "December", "2024-12-24", "post");
+        writePost(postsDir, "may-1.md", "May 1", "2025-05-01", "post");
+        writePost(postsDir, "may-2.md", "May 2", "2025-05-20", "post");
+        writePost(postsDir, "june.md", "June", "2025-06-02", "post");
+        writePost(postsDir, "note.md", "Note", "2025-03-03", "note");
+        writePost(pagesDir, "about.md", "About", "2025-01-01", "page");
+        Files.writeString(tmpDir.resolve("app/site.config"), "---\ntitle: Test\n" + siteConfig + "---\n");
+        return tmpDir;
+    }
+
+    static void writePost(Path dir, String name, String title, String date, String type) throws IOException {
+        Files.writeString(dir.resolve(name), "---\ntitle: " + title + "\ndate: " + date + "\ntype: " + type
+            + "\ntemplate: post.html\n---\nbody\n");
+    }
+
+    static void buildSite(Path tmpDir) throws IOException {
+        FrontmatterParser parser = new FrontmatterParser();
+        FileProcessor fileProcessor = new FileProcessor();
+        TemplateEngine templateEngine = new TemplateEngine();
+        RssGenerator rssGenerator = new RssGenerator(fileProcessor);
+        PageProcessor processor = new PageProcessor(parser, fileProcessor, templateEngine, rssGenerator);
+        processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
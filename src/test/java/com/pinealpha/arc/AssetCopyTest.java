@@ -0,0 +1,154 @@
+// ABOUTME: Verifies that assets and root files are only copied when changed, in parallel, and optionally hard-linked
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.AssetCopyTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+public class AssetCopyTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testUnchangedFilesAreSkipped();
+        testParallelCopy();
+        testLinkedFiles();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testUnchangedFilesAreSkipped() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-asset-test");
+        try {
+            Path app = tmpDir.resolve("app");
+            Path site = tmpDir.resolve("site");
+            Files.createDirectories(app.resolve("assets/css"));
+            Files.createDirectories(app.resolve("root"));
+            Files.writeString(app.resolve("assets/css/style.css"), "body {}");
+            Files.writeString(app.resolve("assets/logo.svg"), "<svg/>");
+            Files.writeString(app.resolve("root/robots.txt"), "User-agent: *");
+
+            FileProcessor processor = new FileProcessor();
+            processor.copyAssets(app, site);
+            processor.copyRootFiles(app, site);
+
+            // Same size and time as the source: a copy that was tampered with this way is left alone
+            Path copiedLogo = site.resolve("assets/logo.svg");
+            Files.writeString(copiedLogo, "<SVG/>");
+            Files.setLastModifiedTime(copiedLogo, Files.getLastModifiedTime(app.resolve("assets/logo.svg")));
+            // An edited source is copied again
+            Path style = app.resolve("assets/css/style.css");
+            Files.writeString(style, "body { margin: 0 }");
+            Files.setLastModifiedTime(style, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+            processor.copyAssets(app, site);
+            processor.copyRootFiles(app, site);
+            if (Files.readString(copiedLogo).equals("<SVG/>")
+                    && Files.readString(site.resolve("assets/css/style.css")).equals("body { margin: 0 }")
+                    && Files.readString(site.resolve("robots.txt")).equals("User-agent: *")
+                    && Files.getLastModifiedTime(site.resolve("assets/css/style.css")).equals(Files.getLastModifiedTime(style))) {
+                pass("testUnchangedFilesAreSkipped");
+            } else {
+                fail("testUnchangedFilesAreSkipped", "Got: " + Files.readString(copiedLogo) + " | "
+                    + Files.readString(site.resolve("assets/css/style.css")));
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testParallelCopy() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-asset-test");
+        try {
+            Path app = tmpDir.resolve("app");
+            Path site = tmpDir.resolve("site");
+            for (int i = 0; i < 50; i++) {
+                Path file = app.resolve("assets/dir" + (i % 5) + "/file" + i + ".bin");
+                Files.createDirectories(file.getParent());
+                Files.write(file, new byte[i * 1000]);
+            }
+
+            FileProcessor processor = new FileProcessor();
+            processor.setCopyThreads(8);
+            processor.copyAssets(app, site);
+
+            List<String> wrong = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                Path copy = site.resolve("assets/dir" + (i % 5) + "/file" + i + ".bin");
+                if (!Files.exists(copy) || Files.size(copy) != i * 1000) {
+                    wrong.add(copy.toString());
+                }
+            }
+            if (wrong.isEmpty()) {
+                pass("testParallelCopy");
+            } else {
+                fail("testParallelCopy", "Missing or wrong: " + wrong);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testLinkedFiles() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-asset-test");
+        try {
+            Path app = tmpDir.resolve("app");
+            Path site = tmpDir.resolve("site");
+            Files.createDirectories(app.resolve("assets"));
+            Path font = app.resolve("assets/font.woff2");
+            Files.write(font, new byte[4096]);
+
+            FileProcessor processor = new FileProcessor();
+            processor.setLinkFiles(true);
+            processor.copyAssets(app, site);
+            Path linked = site.resolve("assets/font.woff2");
+            boolean sameFile = Files.isSameFile(font, linked);
+
+            // A source replaced by a new file is linked again; without linking, the
+            // link in the site is replaced by a copy rather than written through
+            Files.delete(font);
+            Files.write(font, new byte[8192]);
+            processor.copyAssets(app, site);
+            boolean relinked = Files.isSameFile(font, linked);
+            Files.delete(font);
+            Files.write(font, new byte[2048]);
+            new FileProcessor().copyAssets(app, site);
+            if (sameFile && relinked && !Files.isSameFile(font, linked) && Files.size(linked) == 2048) {
+                pass("testLinkedFiles");
+            } else {
+                fail("testLinkedFiles", "Linked: " + sameFile + ", relinked: " + relinked
+                    + ", after copy: " + Files.isSameFile(font, linked));
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,179 @@
+// ABOUTME: Verifies fingerprinted asset names, the asset manifest, cached hashes and the {{ asset "..." }} tag
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.AssetFingerprintTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.*;
+import org.json.JSONObject;
+
+public class AssetFingerprintTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testFingerprintedCopiesAndManifest();
+        testHashesCachedBetweenBuilds();
+        testAssetTag();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testFingerprintedCopiesAndManifest() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-fingerprint-test");
+        try {
+            Path app = tmpDir.resolve("app");
+            Path site = tmpDir.resolve("site");
+            Files.createDirectories(app.resolve("assets/css"));
+            Files.writeString(app.resolve("assets/css/style.css"), "body {}");
+            Files.writeString(app.resolve("assets/LICENSE"), "MIT");
+
+            Map<String, String> manifest = new FileProcessor().copyFingerprintedAssets(app, site,
+                AssetFingerprints.load(tmpDir.resolve(".arc-cache")));
+
+            String styleHash = sha256("body {}").substring(0, 8);
+            String licenseHash = sha256("MIT").substring(0, 8);
+            Map<String, String> expected = Map.of(
+                "css/style.css", "/assets/css/style." + styleHash + ".css",
+                "LICENSE", "/assets/LICENSE." + licenseHash);
+            JSONObject written = new JSONObject(Files.readString(site.resolve("asset-manifest.json")));
+            if (manifest.equals(expected) && written.toMap().equals(expected)
+                    && Files.readString(site.resolve("assets/css/style." + styleHash + ".css")).equals("body {}")
+                    && Files.exists(site.resolve("assets/LICENSE." + licenseHash))
+                    && Files.exists(tmpDir.resolve(".arc-cache/asset-hashes.json"))) {
+                pass("testFingerprintedCopiesAndManifest");
+            } else {
+                fail("testFingerprintedCopiesAndManifest", "Got: " + manifest + " / " + written);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testHashesCachedBetweenBuilds() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-fingerprint-test");
+        try {
+            Path app = tmpDir.resolve("app");
+            Path site = tmpDir.resolve("site");
+            Path cacheDir = tmpDir.resolve(".arc-cache");
+            Files.createDirectories(app.resolve("assets"));
+            Path logo = app.resolve("assets/logo.svg");
+            Path script = app.resolve("assets/app.js");
+            Files.writeString(logo, "<svg/>");
+            Files.writeString(script, "let a;");
+            FileProcessor processor = new FileProcessor();
+            Map<String, String> first = processor.copyFingerprintedAssets(app, site, AssetFingerprints.load(cacheDir));
+
+            // Same size and time: the file isn't read again, so its hash is kept
+            FileTime logoTime = Files.getLastModifiedTime(logo);
+            Files.writeString(logo, "<SVG/>");
+            Files.setLastModifiedTime(logo, logoTime);
+            // A changed file is hashed again and published under a new name
+            Files.writeString(script, "let b;");
+            Files.setLastModifiedTime(script, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            Map<String, String> second = processor.copyFingerprintedAssets(app, site, AssetFingerprints.load(cacheDir));
+
+            String newScript = "/assets/app." + sha256("let b;").substring(0, 8) + ".js";
+            if (second.get("logo.svg").equals(first.get("logo.svg"))
+                    && second.get("app.js").equals(newScript) && !first.get("app.js").equals(newScript)
+                    && Files.readString(site.resolve(newScript.substring(1))).equals("let b;")) {
+                pass("testHashesCachedBetweenBuilds");
+            } else {
+                fail("testHashesCachedBetweenBuilds", "Got: " + first + " then " + second);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testAssetTag() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-fingerprint-test");
+        try {
+            Path app = tmpDir.resolve("app");
+            Files.createDirectories(app.resolve("assets/css"));
+            Files.createDirectories(app.resolve("pages"));
+            Files.createDirectories(app.resolve("templates"));
+            Files.writeString(app.resolve("assets/css/style.css"), "body {}");
+            Files.writeString(app.resolve("templates/page.html"),
+                "{{ asset \"css/style.css\" }}|{{ asset \"/css/style.css\" }}|{{ asset \"js/missing.js\" }}");
+            Files.writeString(app.resolve("pages/index.md"), "---\ntitle: Home\ntype: page\ntemplate: page.html\n---\n");
+
+            String hashed = "/assets/css/style." + sha256("body {}").substring(0, 8) + ".css";
+            String fingerprinted = hashed + "|" + hashed + "|/assets/js/missing.js";
+            String plain = "/assets/css/style.css|/assets/css/style.css|/assets/js/missing.js";
+            List<String> wrong = new ArrayList<>();
+            for (int threshold : new int[] {-1, 0}) {
+                Files.writeString(app.resolve("site.config"), "---\ntitle: Test\nfingerprint_assets: true\n"
+                    + "template_bytecode_threshold: " + threshold + "\n---\n");
+                String output = build(tmpDir);
+                if (!output.equals(fingerprinted)) {
+                    wrong.add("fingerprinted " + threshold + ": " + output);
+                }
+                Files.writeString(app.resolve("site.config"), "---\ntitle: Test\n"
+                    + "template_bytecode_threshold: " + threshold + "\n---\n");
+                output = build(tmpDir);
+                if (!output.equals(plain)) {
+                    wrong.add("plain " + threshold + ": " + output);
+                }
+            }
+
+            // An edited asset changes the manifest, so pages that link to it are rendered again
+            Files.writeString(app.resolve("site.config"), "---\ntitle: Test\nfingerprint_assets: true\n---\n");
+            build(tmpDir);
+            Files.writeString(app.resolve("assets/css/style.css"), "body { margin: 0 }");
+            Files.setLastModifiedTime(app.resolve("assets/css/style.css"),
+                FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            String edited = build(tmpDir);
+            if (!edited.startsWith("/assets/css/style." + sha256("body { margin: 0 }").substring(0, 8) + ".css|")) {
+                wrong.add("edited: " + edited);
+            }
+            if (wrong.isEmpty()) {
+                pass("testAssetTag");
+            } else {
+                fail("testAssetTag", "Got: " + wrong);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static String build(Path tmpDir) throws IOException {
+        FileProcessor fileProcessor = new FileProcessor();
+        PageProcessor processor = new PageProcessor(new FrontmatterParser(), fileProcessor, new TemplateEngine(),
+            new RssGenerator(fileProcessor));
+        processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+        return Files.readString(tmpDir.resolve("site/index.html"));
+    }
+
+    static String sha256(String content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content.getBytes()));
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,118 @@
+// ABOUTME: Verifies the compact field storage of content metadata and its Map view
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.CompactFieldsTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Supplier;
+
+public class CompactFieldsTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testMapView();
+        testMetadataMapView();
+        testBodiesStayLazy();
+        testShapesAreSharedWithinATable();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testMapView() {
+        Map<String, String> source = new LinkedHashMap<>();
+        source.put("title", "Hello");
+        source.put("date", "2026-01-01");
+        source.put("url", "/hello.html");
+        CompactFields fields = CompactFields.of(source);
+
+        boolean ok = fields.equals(source) && source.equals(fields)
+            && fields.hashCode() == source.hashCode()
+            && fields.get("title").equals("Hello") && fields.get("missing") == null
+            && fields.containsKey("url") && !fields.containsKey("missing") && fields.size() == 3
+            && CompactFields.of(fields) == fields
+            && CompactFields.of(Map.of()).isEmpty();
+        if (ok) {
+            pass("testMapView");
+        } else {
+            fail("testMapView", "Got: " + fields);
+        }
+    }
+
+    static void testMetadataMapView() {
+        Map<String, String> source = Map.of("title", "Hello", "type", "post");
+        ContentMetadata metadata = new ContentMetadata(Path.of("hello.md"), source, loader(new int[1]));
+
+        Map<String, String> expected = new HashMap<>(source);
+        expected.put(ContentMetadata.CONTENT_KEY, "body");
+        expected.put(ContentMetadata.RENDERED_CONTENT_KEY, "<p>body</p>");
+        if (metadata.equals(expected) && new HashMap<>(metadata).equals(expected)
+                && metadata.fields().equals(source) && metadata.size() == 4) {
+            pass("testMetadataMapView");
+        } else {
+            fail("testMetadataMapView", "Got: " + metadata);
+        }
+    }
+
+    static void testBodiesStayLazy() {
+        int[] loads = new int[1];
+        ContentMetadata metadata = new ContentMetadata(Path.of("hello.md"), Map.of("title", "Hello"), loader(loads));
+
+        String title = metadata.get("title");
+        boolean lazy = loads[0] == 0 && metadata.containsKey(ContentMetadata.CONTENT_KEY);
+        String html = metadata.get(ContentMetadata.RENDERED_CONTENT_KEY);
+        if (title.equals("Hello") && lazy && html.equals("<p>body</p>") && loads[0] == 1) {
+            pass("testBodiesStayLazy");
+        } else {
+            fail("testBodiesStayLazy", "Loads: " + loads[0]);
+        }
+    }
+
+    static void testShapesAreSharedWithinATable() {
+        CompactFields.Shapes shapes = new CompactFields.Shapes();
+        CompactFields first = CompactFields.of(Map.of("title", "One", "date", "2026-01-01"), shapes);
+        CompactFields second = CompactFields.of(Map.of("date", "2026-01-02", "title", "Two"), shapes);
+        CompactFields page = CompactFields.of(Map.of("title", "About"), shapes);
+        int sharedShapes = shapes.size();
+
+        // A later build starts from an empty table; maps of earlier builds keep working
+        CompactFields.Shapes nextBuild = new CompactFields.Shapes();
+        CompactFields.of(Map.of("title", "Three", "date", "2026-01-03"), nextBuild);
+        if (sharedShapes == 2 && nextBuild.size() == 1 && first.get("title").equals("One")
+                && second.get("date").equals("2026-01-02") && page.size() == 1) {
+            pass("testShapesAreSharedWithinATable");
+        } else {
+            fail("testShapesAreSharedWithinATable", "Shapes: " + sharedShapes + ", next build: " + nextBuild.size());
+        }
+    }
+
+    // --- helpers ---
+
+    static ContentMetadata.BodyLoader loader(int[] loads) {
+        return new ContentMetadata.BodyLoader() {
+            @Override
+            public String readMarkdown(Path source) {
+                loads[0]++;
+                return "body";
+            }
+
+            @Override
+            public String render(Path source, Supplier<String> markdown) {
+                return "<p>" + markdown.get() + "</p>";
+            }
+        };
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+}
@@ -0,0 +1,239 @@
+// ABOUTME: Verifies that the build cache only re-renders pages whose source, templates or globals changed
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.IncrementalBuildTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+public class IncrementalBuildTest {
+
+    private static final FileTime OLD = FileTime.fromMillis(1_000_000_000_000L);
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testUnchangedSiteIsNotRewritten();
+        testEditedPostRerendersOnlyDependentPages();
+        testEditedIncludeAndDataRerenderPagesUsingThem();
+        testCleanBuildAndMissingOutputsRerender();
+        testFailedRenderKeepsPreviousPage();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testUnchangedSiteIsNotRewritten() throws Exception {
+        Path tmpDir = createTestSite();
+        try {
+            buildSite(tmpDir, false);
+            markOutputsOld(tmpDir);
+            buildSite(tmpDir, false);
+
+            Set<String> rewritten = rewrittenOutputs(tmpDir);
+            if (rewritten.isEmpty() && Files.exists(tmpDir.resolve(".arc-cache/manifest.json"))) {
+                pass("testUnchangedSiteIsNotRewritten");
+            } else {
+                fail("testUnchangedSiteIsNotRewritten", "Rewrote " + rewritten);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testEditedPostRerendersOnlyDependentPages() throws Exception {
+        Path tmpDir = createTestSite();
+        try {
+            buildSite(tmpDir, false);
+            markOutputsOld(tmpDir);
+            writePost(tmpDir, 2, "Second (edited)");
+            buildSite(tmpDir, false);
+
+            // The index lists every post; the other posts don't read the posts collection
+            Set<String> rewritten = rewrittenOutputs(tmpDir);
+            String index = Files.readString(tmpDir.resolve("site/index.html"));
+            if (rewritten.equals(Set.of("index.html", "posts/post-2.html")) && index.contains("Second (edited)")) {
+                pass("testEditedPostRerendersOnlyDependentPages");
+            } else {
+                fail("testEditedPostRerendersOnlyDependentPages", "Rewrote " + rewritten + ", index: " + index);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testEditedIncludeAndDataRerenderPagesUsingThem() throws Exception {
+        Path tmpDir = createTestSite();
+        try {
+            buildSite(tmpDir, false);
+            markOutputsOld(tmpDir);
+            Files.writeString(tmpDir.resolve("app/templates/footer.html"), "<footer>new</footer>");
+            buildSite(tmpDir, false);
+            Set<String> afterInclude = rewrittenOutputs(tmpDir);
+
+            markOutputsOld(tmpDir);
+            Files.writeString(tmpDir.resolve("app/data/links.json"), "[{\"name\": \"changed\"}]");
+            buildSite(tmpDir, false);
+            Set<String> afterData = rewrittenOutputs(tmpDir);
+
+            boolean ok = afterInclude.equals(Set.of("posts/post-1.html", "posts/post-2.html", "posts/post-3.html"))
+                && afterData.equals(Set.of("index.html"))
+                && Files.readString(tmpDir.resolve("site/index.html")).contains("changed");
+            if (ok) {
+                pass("testEditedIncludeAndDataRerenderPagesUsingThem");
+            } else {
+                fail("testEditedIncludeAndDataRerenderPagesUsingThem",
+                    "Include edit rewrote " + afterInclude + ", data edit rewrote " + afterData);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testCleanBuildAndMissingOutputsRerender() throws Exception {
+        Path tmpDir = createTestSite();
+        try {
+            buildSite(tmpDir, false);
+            markOutputsOld(tmpDir);
+            Files.delete(tmpDir.resolve("site/posts/post-3.html"));
+            buildSite(tmpDir, false);
+            Set<String> afterDelete = rewrittenOutputs(tmpDir);
+
+            markOutputsOld(tmpDir);
+            buildSite(tmpDir, true);
+            Set<String> afterClean = rewrittenOutputs(tmpDir);
+
+            if (afterDelete.equals(Set.of("posts/post-3.html")) && afterClean.size() == 4) {
+                pass("testCleanBuildAndMissingOutputsRerender");
+            } else {
+                fail("testCleanBuildAndMissingOutputsRerender",
+                    "Deleted output rebuild rewrote " + afterDelete + ", clean build rewrote " + afterClean);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testFailedRenderKeepsPreviousPage() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-incremental-test");
+        try {
+            Path page = tmpDir.resolve("site/index.html");
+            FileProcessor fileProcessor = new FileProcessor();
+            fileProcessor.writeFile(page, "old page");
+
+            // While a page renders, and after its render fails, readers see the previous page
+            List<String> seen = new ArrayList<>();
+            try {
+                fileProcessor.writeFile(page, out -> {
+                    out.write("half a new pa");
+                    out.flush();
+                    seen.add(Files.readString(page));
+                    throw new IllegalStateException("template error");
+                });
+            } catch (IllegalStateException e) {
+                seen.add(Files.readString(page));
+            }
+            fileProcessor.writeFile(page, out -> out.write("new page"));
+
+            List<String> files;
+            try (var entries = Files.list(page.getParent())) {
+                files = entries.map(entry -> entry.getFileName().toString()).toList();
+            }
+            if (seen.equals(List.of("old page", "old page")) && Files.readString(page).equals("new page")
+                    && files.equals(List.of("index.html"))) {
+                pass("testFailedRenderKeepsPreviousPage");
+            } else {
+                fail("testFailedRenderKeepsPreviousPage", "Saw " + seen + ", files " + files);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static Path createTestSite() throws IOException {
+        Path tmpDir = Files.createTempDirectory("arc-incremental-test");
+        Path templatesDir = tmpDir.resolve("app/templates");
+        Files.createDirectories(tmpDir.resolve("app/posts"));
+        Files.createDirectories(tmpDir.resolve("app/pages"));
+        Files.createDirectories(tmpDir.resolve("app/data"));
+        Files.createDirectories(templatesDir);
+        Files.createDirectories(tmpDir.resolve("site"));
+
+        Files.writeString(templatesDir.resolve("post.html"), "<h1>{{ title }}</h1>{{ content }}{% include \"footer.html\" %}");
+        Files.writeString(templatesDir.resolve("footer.html"), "<footer>{{ title }}</footer>");
+        Files.writeString(templatesDir.resolve("home.html"),
+            "{% for p in posts %}[{{ p.title }}]{% endfor %}{% for l in links %}({{ l.name }}){% endfor %}");
+        Files.writeString(tmpDir.resolve("app/data/links.json"), "[{\"name\": \"one\"}]");
+        Files.writeString(tmpDir.resolve("app/pages/index.md"), "---\ntitle: Home\ntype: page\ntemplate: home.html\n---\n");
+        writePost(tmpDir, 1, "First");
+        writePost(tmpDir, 2, "Second");
+        writePost(tmpDir, 3, "Third");
+        return tmpDir;
+    }
+
+    static void writePost(Path tmpDir, int number, String title) throws IOException {
+        Files.writeString(tmpDir.resolve("app/posts/post-" + number + ".md"), String.format(
+            "---\ntitle: %s\ndate: 2026-01-%02d\ntype: post\ntemplate: post.html\n---\nBody %d\n", title, number, number));
+    }
+
+    static void buildSite(Path tmpDir, boolean clean) throws IOException {
+        FrontmatterParser parser = new FrontmatterParser();
+        FileProcessor fileProcessor = new FileProcessor();
+        TemplateEngine templateEngine = new TemplateEngine();
+        RssGenerator rssGenerator = new RssGenerator(fileProcessor);
+        PageProcessor processor = new PageProcessor(parser, fileProcessor, templateEngine, rssGenerator);
+        processor.setCleanBuild(clean);
+        processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+    }
+
+    /**
+     * Backdate every generated page so that rewritten pages can be told apart
+     */
+    static void markOutputsOld(Path tmpDir) throws IOException {
+        for (Path page : htmlOutputs(tmpDir)) {
+            Files.setLastModifiedTime(page, OLD);
+        }
+    }
+
+    static Set<String> rewrittenOutputs(Path tmpDir) throws IOException {
+        Set<String> rewritten = new TreeSet<>();
+        for (Path page : htmlOutputs(tmpDir)) {
+            if (!Files.getLastModifiedTime(page).equals(OLD)) {
+                rewritten.add(tmpDir.resolve("site").relativize(page).toString().replace('\\', '/'));
+            }
+        }
+        return rewritten;
+    }
+
+    static List<Path> htmlOutputs(Path tmpDir) throws IOException {
+        try (var paths = Files.walk(tmpDir.resolve("site"))) {
+            return paths.filter(path -> path.toString().endsWith(".html")).toList();
+        }
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
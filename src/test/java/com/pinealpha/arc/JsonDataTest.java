@@ -0,0 +1,236 @@
+// ABOUTME: Verifies lazily parsed JSON data files: decoded values, syntax errors and reuse across rebuilds
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.JsonDataTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class JsonDataTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testValuesMatchEagerParse();
+        testSyntaxErrorsNameFileAndPosition();
+        testLargeFileIsReadLazily();
+        testObjectWithManyKeys();
+        testRebuildReusesUnchangedFiles();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testValuesMatchEagerParse() throws Exception {
+        String json = "{\"name\": \"Caf\\u00e9 \\\"Arc\\\"\\n\", \"utf8\": \"na\u00efve \u2713\", \"count\": 42,\n"
+            + " \"big\": 12345678901, \"huge\": 123456789012345678901234567890, \"price\": 1.50, \"exp\": 1e5,\n"
+            + " \"neg\": -0, \"yes\": true, \"no\": false, \"nothing\": null, \"empty\": {}, \"none\": [],\n"
+            + " \"nested\": {\"list\": [1, \"two\", {\"three\": [3]}], \"dup\": 1, \"dup\": 2}}";
+        Path tmpDir = Files.createTempDirectory("arc-json-test");
+        try {
+            Path file = tmpDir.resolve("data.json");
+            Files.writeString(file, json);
+            Object lazy = JsonData.load(file);
+            Object eager = toJava(new JSONObject(json.replace("\"dup\": 1, ", "")));
+
+            Map<?, ?> map = (Map<?, ?>) lazy;
+            Map<?, ?> nested = (Map<?, ?>) map.get("nested");
+            boolean ok = lazy.equals(eager) && eager.equals(lazy)
+                && map.get("name").equals("Caf\u00e9 \"Arc\"\n")
+                && map.get("price").toString().equals("1.50")
+                && nested.get("dup").equals(2) && nested.size() == 2
+                && map.get("missing") == null && map.containsKey("nothing")
+                // Nested views are created once and then reused
+                && map.get("nested") == nested;
+            if (ok) {
+                pass("testValuesMatchEagerParse");
+            } else {
+                fail("testValuesMatchEagerParse", "Got: " + lazy + " expected " + eager);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testSyntaxErrorsNameFileAndPosition() throws Exception {
+        Map<String, String> invalid = new LinkedHashMap<>();
+        invalid.put("{ this is not json", "expected a string key at line 1, column 3");
+        invalid.put("[1, 2,\n 3,]", "expected a value at line 2, column 4");
+        invalid.put("{\"a\": [1, 2}", "expected ',' or ']' at line 1, column 12");
+        invalid.put("{\"a\": \"unterminated}", "unterminated string at line 1, column 7");
+        invalid.put("[01]", "expected ',' or ']' at line 1, column 3");
+        invalid.put("[\"bad \\x escape\"]", "invalid escape at line 1, column 7");
+        invalid.put("\"just a string\"", "Top-level JSON value must be an object or array at line 1, column 1");
+        invalid.put("[true] []", "unexpected text after the top-level value at line 1, column 8");
+        invalid.put("[[[", "unexpected end of file at line 1, column 4");
+
+        Path tmpDir = Files.createTempDirectory("arc-json-test");
+        try {
+            Path file = tmpDir.resolve("broken.json");
+            List<String> wrong = new ArrayList<>();
+            for (Map.Entry<String, String> entry : invalid.entrySet()) {
+                Files.writeString(file, entry.getKey());
+                try {
+                    JsonData.load(file);
+                    wrong.add(entry.getKey() + " -> parsed");
+                } catch (IOException e) {
+                    if (!e.getMessage().equals("Failed to parse data file broken.json: " + entry.getValue())) {
+                        wrong.add(entry.getKey() + " -> " + e.getMessage());
+                    }
+                }
+            }
+            if (wrong.isEmpty()) {
+                pass("testSyntaxErrorsNameFileAndPosition");
+            } else {
+                fail("testSyntaxErrorsNameFileAndPosition", "Got: " + wrong);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testLargeFileIsReadLazily() throws Exception {
+        // Above the size at which files are memory-mapped rather than read
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 30000; i++) {
+            json.append(i > 0 ? ",\n" : "").append("{\"id\": ").append(i)
+                .append(", \"name\": \"Product ").append(i).append("\", \"tags\": [\"a\", \"b\"]}");
+        }
+        json.append("]");
+        Path tmpDir = Files.createTempDirectory("arc-json-test");
+        try {
+            Path file = tmpDir.resolve("products.json");
+            Files.writeString(file, json);
+            List<?> products = (List<?>) JsonData.load(file);
+            Map<?, ?> last = (Map<?, ?>) products.get(29999);
+            if (Files.size(file) > (1 << 20) && products.size() == 30000
+                    && last.get("name").equals("Product 29999") && last.get("id").equals(29999)) {
+                pass("testLargeFileIsReadLazily");
+            } else {
+                fail("testLargeFileIsReadLazily", "Got: " + products.size() + " " + last);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testObjectWithManyKeys() throws Exception {
+        // A catalog keyed by id; every tenth key appears again later with a new value
+        int count = 100000;
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < count; i++) {
+            json.append(i > 0 ? ",\n" : "").append("\"id-").append(i).append("\": ").append(i);
+        }
+        for (int i = 0; i < count; i += 10) {
+            json.append(",\n\"id-").append(i).append("\": \"again ").append(i).append("\"");
+        }
+        json.append(", \"id-1\": \"last\"}");
+        Path tmpDir = Files.createTempDirectory("arc-json-test");
+        try {
+            Path file = tmpDir.resolve("catalog.json");
+            Files.writeString(file, json);
+            Map<?, ?> catalog = (Map<?, ?>) JsonData.load(file);
+            List<Object> firstKeys = new ArrayList<>();
+            for (Object key : catalog.keySet()) {
+                if (firstKeys.size() == 3) {
+                    break;
+                }
+                firstKeys.add(key);
+            }
+            // Repeated keys keep their first position and take their last value
+            if (catalog.size() == count && firstKeys.equals(List.of("id-0", "id-1", "id-2"))
+                    && catalog.get("id-0").equals("again 0") && catalog.get("id-1").equals("last")
+                    && catalog.get("id-99990").equals("again 99990") && catalog.get("id-99999").equals(99999)
+                    && !catalog.containsKey("id-100000")) {
+                pass("testObjectWithManyKeys");
+            } else {
+                fail("testObjectWithManyKeys", "Got " + catalog.size() + " keys starting " + firstKeys);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testRebuildReusesUnchangedFiles() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-json-test");
+        try {
+            Files.createDirectories(tmpDir.resolve("app/data"));
+            Files.createDirectories(tmpDir.resolve("app/pages"));
+            Files.createDirectories(tmpDir.resolve("app/templates"));
+            Files.createDirectories(tmpDir.resolve("site"));
+            Files.writeString(tmpDir.resolve("app/templates/page.html"), "{{ settings.theme }}");
+            Files.writeString(tmpDir.resolve("app/pages/index.md"),
+                "---\ntitle: Home\ntype: page\ntemplate: page.html\n---\n");
+            Path data = tmpDir.resolve("app/data/settings.json");
+            Files.writeString(data, "{\"theme\": \"dark\"}");
+
+            TemplateEngine engine = new TemplateEngine();
+            FileProcessor fileProcessor = new FileProcessor();
+            PageProcessor processor = new PageProcessor(new FrontmatterParser(), fileProcessor, engine,
+                new RssGenerator(fileProcessor));
+            processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+            Object first = engine.getGlobalVariable("settings");
+            processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+            Object second = engine.getGlobalVariable("settings");
+
+            Files.writeString(data, "{\"theme\": \"light\"}");
+            Files.setLastModifiedTime(data, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+            String output = Files.readString(tmpDir.resolve("site/index.html"));
+
+            if (first == second && engine.getGlobalVariable("settings") != first && output.equals("light")) {
+                pass("testRebuildReusesUnchangedFiles");
+            } else {
+                fail("testRebuildReusesUnchangedFiles", "Got: " + output + " reused=" + (first == second));
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static Object toJava(Object value) {
+        if (value instanceof JSONObject obj) {
+            Map<String, Object> map = new HashMap<>();
+            for (String key : obj.keySet()) {
+                map.put(key, toJava(obj.get(key)));
+            }
+            return map;
+        }
+        if (value instanceof JSONArray arr) {
+            List<Object> list = new ArrayList<>();
+            for (int i = 0; i < arr.length(); i++) {
+                list.add(toJava(arr.get(i)));
+            }
+            return list;
+        }
+        return value == JSONObject.NULL ? null : value;
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
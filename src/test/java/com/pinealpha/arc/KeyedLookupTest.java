@@ -0,0 +1,155 @@
+// ABOUTME: Verifies keyed lookups into collections and maps ({{ authors[post.author].name }}), interpreted and compiled
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.KeyedLookupTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+public class KeyedLookupTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testLookups();
+        testBytecodeMatchesInterpreter();
+        testDataKeysFromSiteConfig();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testLookups() throws Exception {
+        TemplateEngine engine = newEngine();
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("{% for p in posts %}[{{ p.title }} by {{ authors[p.author].name }}]{% endfor %}",
+            "[One by Ann][Two by Bob][Three by ]");
+        expected.put("{{ authors[post.author].name }}", "Bob");
+        expected.put("{{ authors[post.author].meta.city }}", "Oslo");
+        expected.put("{{ authors[post.missing].name }}", "");
+        expected.put("{{ labels[post.author] }}", "Robert");
+        // Only collections with a declared key field can be looked up in
+        expected.put("{{ tags[post.author].name }}", "");
+        expected.put("{{ authors [post.author] }}", "{{ authors [post.author] }}");
+
+        List<String> wrong = new ArrayList<>();
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            String output = engine.processTemplate(entry.getKey(),
+                Map.of("post", Map.of("author", "bob", "missing", "nobody")), "", Path.of("."));
+            if (!output.equals(entry.getValue())) {
+                wrong.add(entry.getKey() + " -> " + output);
+            }
+        }
+
+        // A page variable shadowing the collection is looked up without the index
+        String shadowed = engine.processTemplate("{{ authors[post.author].name }}",
+            Map.of("post", Map.of("author", "bob"), "authors", List.of(Map.of("id", "bob", "name", "Page Bob"))),
+            "", Path.of("."));
+        if (wrong.isEmpty() && shadowed.equals("Page Bob")) {
+            pass("testLookups");
+        } else {
+            fail("testLookups", "Got: " + wrong + " " + shadowed);
+        }
+    }
+
+    static void testBytecodeMatchesInterpreter() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-lookup-test");
+        try {
+            Path templatePath = tmpDir.resolve("page.html");
+            Files.writeString(templatePath,
+                "{% for p in posts %}[{{ authors[p.author].name }}]{% endfor %}"
+                + "<{{ authors[post.author].meta.city }}|{{ labels[post.author] }}|{{ authors[post.missing] }}>");
+
+            TemplateEngine interpreted = newEngine();
+            TemplateEngine compiled = newEngine();
+            compiled.setBytecodeThreshold(0);
+            Map<String, Object> page = Map.of("post", Map.of("author", "bob", "missing", "nobody"));
+            String expected = interpreted.processTemplateFile(templatePath, page, "", tmpDir);
+            String actual = compiled.processTemplateFile(templatePath, page, "", tmpDir);
+            if (expected.equals("[Ann][Bob][]<Oslo|Robert|>") && actual.equals(expected)) {
+                pass("testBytecodeMatchesInterpreter");
+            } else {
+                fail("testBytecodeMatchesInterpreter", "Got: " + expected + " / " + actual);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testDataKeysFromSiteConfig() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-lookup-test");
+        try {
+            Path postsDir = tmpDir.resolve("app/posts");
+            Path templatesDir = tmpDir.resolve("app/templates");
+            Path dataDir = tmpDir.resolve("app/data");
+            Files.createDirectories(postsDir);
+            Files.createDirectories(templatesDir);
+            Files.createDirectories(dataDir);
+            Files.createDirectories(tmpDir.resolve("site"));
+
+            Files.writeString(dataDir.resolve("authors.json"),
+                "[{\"id\": 1, \"name\": \"Ann\"}, {\"id\": 2, \"name\": \"Bob\"}]");
+            Files.writeString(templatesDir.resolve("post.html"), "{{ title }} by {{ authors[author].name }}");
+            // Numeric ids in the data file match the text of the frontmatter field
+            Files.writeString(postsDir.resolve("hello.md"),
+                "---\ntitle: Hello\ndate: 2026-01-01\ntype: post\ntemplate: post.html\nauthor: 2\n---\nbody\n");
+            Files.writeString(tmpDir.resolve("app/site.config"), "---\ntitle: Test\ndata_keys: authors:id\n---\n");
+
+            FileProcessor fileProcessor = new FileProcessor();
+            PageProcessor processor = new PageProcessor(new FrontmatterParser(), fileProcessor, new TemplateEngine(),
+                new RssGenerator(fileProcessor));
+            processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+
+            String output = Files.readString(tmpDir.resolve("site/posts/hello.html"));
+            if (output.equals("Hello by Bob")) {
+                pass("testDataKeysFromSiteConfig");
+            } else {
+                fail("testDataKeysFromSiteConfig", "Got: " + output);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static TemplateEngine newEngine() {
+        TemplateEngine engine = new TemplateEngine();
+        engine.registerGlobalVariable("authors", List.of(
+            Map.of("id", "ann", "name", "Ann"),
+            Map.of("id", "bob", "name", "Bob", "meta", Map.of("city", "Oslo")),
+            Map.of("id", "bob", "name", "Second Bob")));
+        engine.registerGlobalVariable("tags", List.of(Map.of("id", "bob", "name", "Tag")));
+        engine.registerGlobalVariable("labels", Map.of("bob", "Robert"));
+        engine.registerGlobalVariable("posts", List.of(
+            Map.of("title", "One", "author", "ann"),
+            Map.of("title", "Two", "author", "bob"),
+            Map.of("title", "Three", "author", "carol")));
+        engine.setCollectionKeys(Map.of("authors", "id"));
+        return engine;
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,206 @@
+// ABOUTME: Verifies that content discovery reads only frontmatter and bodies are loaded when first used
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.LazyContentTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class LazyContentTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testReadFrontmatterMatchesWholeFile();
+        testBodyIsLoadedOnlyWhenRead();
+        testListedBodiesAreRendered();
+        testDeletedSourceFailsWithIOException();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testReadFrontmatterMatchesWholeFile() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-lazy-test");
+        try {
+            FrontmatterParser parser = new FrontmatterParser();
+            List<String> files = List.of(
+                "---\ntitle: A\n---\nbody\n",
+                "---\r\ntitle: B\r\n---\r\nbody\r\n",
+                "---\ntitle: C\ndate: 2026-01-01\n---",
+                "no frontmatter\n---\n",
+                "---\ntitle: D\n" + "x: y\n".repeat(2000) + "---\n" + "body\n".repeat(10000),
+                "---\ntitle: unclosed\n");
+            List<String> mismatches = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                Path file = tmpDir.resolve(i + ".md");
+                Files.writeString(file, files.get(i));
+                String expected = parser.extractFrontmatter(files.get(i));
+                if (!parser.readFrontmatter(file).equals(expected)) {
+                    mismatches.add(String.valueOf(i));
+                }
+            }
+            if (mismatches.isEmpty()) {
+                pass("testReadFrontmatterMatchesWholeFile");
+            } else {
+                fail("testReadFrontmatterMatchesWholeFile", "Mismatched files: " + mismatches);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testBodyIsLoadedOnlyWhenRead() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-lazy-test");
+        try {
+            AtomicInteger reads = new AtomicInteger();
+            AtomicInteger renders = new AtomicInteger();
+            ContentMetadata.BodyLoader loader = new ContentMetadata.BodyLoader() {
+                @Override
+                public String readMarkdown(Path source) {
+                    reads.incrementAndGet();
+                    return "*" + source.getFileName() + "*";
+                }
+
+                @Override
+                public String render(Path source, Supplier<String> markdown) {
+                    renders.incrementAndGet();
+                    return "<em>" + markdown.get() + "</em>";
+                }
+            };
+            List<Map<String, String>> posts = new ArrayList<>();
+            for (String name : List.of("a.md", "b.md")) {
+                Path source = tmpDir.resolve(name);
+                Files.writeString(source, "---\ntitle: " + name + "\n---\n");
+                posts.add(new ContentMetadata(source, Map.of("title", name), loader));
+            }
+
+            // Registering, hashing and listing titles don't touch the bodies
+            TemplateEngine engine = new TemplateEngine();
+            engine.registerGlobalVariable("posts", posts);
+            engine.freezeGlobals();
+            BuildCache cache = BuildCache.load(tmpDir.resolve("cache"), "", true);
+            cache.hashGlobal("posts", true, engine.getGlobalVariable("posts"));
+            String titles = engine.processTemplate("{% for p in posts %}{{ p.title }};{% endfor %}", Map.of(), "", tmpDir);
+            boolean untouched = titles.equals("a.md;b.md;") && reads.get() == 0 && renders.get() == 0;
+
+            String bodies = engine.processTemplate("{% for p in posts limit 1 %}{{ p.rendered_content }}{% endfor %}",
+                Map.of(), "", tmpDir);
+            boolean loaded = bodies.equals("<em>*a.md*</em>") && reads.get() == 1 && renders.get() == 1;
+            if (untouched && loaded) {
+                pass("testBodyIsLoadedOnlyWhenRead");
+            } else {
+                fail("testBodyIsLoadedOnlyWhenRead", "Got: " + titles + " | " + bodies
+                    + " after " + reads + " reads, " + renders + " renders");
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testListedBodiesAreRendered() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-lazy-test");
+        try {
+            Path postsDir = tmpDir.resolve("app/posts");
+            Path pagesDir = tmpDir.resolve("app/pages");
+            Path templatesDir = tmpDir.resolve("app/templates");
+            Files.createDirectories(postsDir);
+            Files.createDirectories(pagesDir);
+            Files.createDirectories(templatesDir);
+            Files.createDirectories(tmpDir.resolve("site"));
+            Files.writeString(templatesDir.resolve("post.html"), "{{ content }}");
+            Files.writeString(templatesDir.resolve("list.html"),
+                "{% for p in posts %}[{{ p.rendered_content }}]{% endfor %}");
+            Files.writeString(postsDir.resolve("hello.md"),
+                "---\ntitle: Hello\ndate: 2026-01-01\ntype: post\ntemplate: post.html\n---\n**hi**\n");
+            Files.writeString(pagesDir.resolve("index.md"), "---\ntitle: Home\ntype: page\ntemplate: list.html\n---\n");
+
+            buildSite(tmpDir);
+
+            String post = Files.readString(tmpDir.resolve("site/posts/hello.html"));
+            String index = Files.readString(tmpDir.resolve("site/index.html"));
+            if (post.equals("<p><strong>hi</strong></p>\n") && index.equals("[<p><strong>hi</strong></p>\n]")) {
+                pass("testListedBodiesAreRendered");
+            } else {
+                fail("testListedBodiesAreRendered", "Got: " + post + " | " + index);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testDeletedSourceFailsWithIOException() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-lazy-test");
+        try {
+            Files.createDirectories(tmpDir.resolve("app/posts"));
+            Files.createDirectories(tmpDir.resolve("app/templates"));
+            Files.writeString(tmpDir.resolve("app/templates/post.html"), "{{ content }}");
+            // Without the build cache, which hashes sources up front, only the lazy body load reads the post
+            Files.writeString(tmpDir.resolve("app/site.config"), "---\nincremental: false\n---\n");
+            Path post = tmpDir.resolve("app/posts/gone.md");
+            Files.writeString(post, "---\ntitle: Gone\ndate: 2026-01-01\ntype: post\ntemplate: post.html\n---\nbody\n");
+            // The post is deleted once discovered, before its body is loaded
+            FrontmatterParser parser = new FrontmatterParser() {
+                @Override
+                public String readFrontmatter(Path file) throws IOException {
+                    String frontmatter = super.readFrontmatter(file);
+                    Files.delete(file);
+                    return frontmatter;
+                }
+            };
+            FileProcessor fileProcessor = new FileProcessor();
+            PageProcessor processor = new PageProcessor(parser, fileProcessor, new TemplateEngine(),
+                new RssGenerator(fileProcessor));
+            // Watch mode only survives failed rebuilds that throw IOException
+            Exception thrown = null;
+            try {
+                processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+            } catch (Exception e) {
+                thrown = e;
+            }
+            if (thrown instanceof NoSuchFileException) {
+                pass("testDeletedSourceFailsWithIOException");
+            } else {
+                fail("testDeletedSourceFailsWithIOException", "Threw: " + thrown);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static void buildSite(Path tmpDir) throws IOException {
+        FrontmatterParser parser = new FrontmatterParser();
+        FileProcessor fileProcessor = new FileProcessor();
+        TemplateEngine templateEngine = new TemplateEngine();
+        RssGenerator rssGenerator = new RssGenerator(fileProcessor);
+        PageProcessor processor = new PageProcessor(parser, fileProcessor, templateEngine, rssGenerator);
+        processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,163 @@
+// ABOUTME: Verifies the where and sort clauses of {% for %} loops, interpreted and compiled to bytecode
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.LoopQueryTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+public class LoopQueryTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testWhereAndSort();
+        testSortWithLimitMatchesFullSort();
+        testPageCollectionsAreQueried();
+        testBytecodeMatchesInterpreter();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testWhereAndSort() throws Exception {
+        TemplateEngine engine = new TemplateEngine();
+        engine.registerGlobalVariable("posts", posts());
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("{% for p in posts where category == 'news' %}[{{ p.title }}]{% endfor %}", "[A][C][E]");
+        expected.put("{% for p in posts where category == news offset 1 limit 1 %}[{{ p.title }}]{% endfor %}", "[C]");
+        expected.put("{% for p in posts where rank %}[{{ p.title }}]{% endfor %}", "[A][B][C][D]");
+        expected.put("{% for p in posts sort rank %}[{{ p.title }}]{% endfor %}", "[C][A][D][B][E]");
+        expected.put("{% for p in posts sort rank desc limit 2 %}[{{ p.title }}]{% endfor %}", "[B][D]");
+        expected.put("{% for p in posts sort category desc %}[{{ p.title }}]{% endfor %}", "[B][D][A][C][E]");
+        expected.put("{% for p in posts limit 2 sort title desc where category == 'news' %}[{{ p.title }}]{% endfor %}",
+            "[E][C]");
+        expected.put("{% for p in posts where category == 'none' sort rank %}[{{ p.title }}]{% endfor %}", "");
+
+        List<String> wrong = new ArrayList<>();
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            // Twice: the second render reuses the selection of the first
+            for (int i = 0; i < 2; i++) {
+                String output = engine.processTemplate(entry.getKey(), Map.of(), "", Path.of("."));
+                if (!output.equals(entry.getValue())) {
+                    wrong.add(entry.getKey() + " -> " + output);
+                }
+            }
+        }
+        if (wrong.isEmpty()) {
+            pass("testWhereAndSort");
+        } else {
+            fail("testWhereAndSort", "Got: " + wrong);
+        }
+    }
+
+    static void testSortWithLimitMatchesFullSort() throws Exception {
+        Random random = new Random(42);
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("id", i);
+            if (random.nextInt(10) > 0) {
+                item.put("score", random.nextInt(50));
+            }
+            items.add(item);
+        }
+        TemplateEngine engine = new TemplateEngine();
+        engine.registerGlobalVariable("items", items);
+
+        String full = engine.processTemplate("{% for i in items sort score desc %}{{ i.id }},{% endfor %}",
+            Map.of(), "", Path.of("."));
+        String top = engine.processTemplate("{% for i in items sort score desc offset 5 limit 20 %}{{ i.id }},{% endfor %}",
+            Map.of(), "", Path.of("."));
+        String[] fullIds = full.split(",");
+        String expectedTop = String.join(",", Arrays.copyOfRange(fullIds, 5, 25)) + ",";
+        if (fullIds.length == 500 && top.equals(expectedTop)) {
+            pass("testSortWithLimitMatchesFullSort");
+        } else {
+            fail("testSortWithLimitMatchesFullSort", "Got: " + top + " expected " + expectedTop);
+        }
+    }
+
+    static void testPageCollectionsAreQueried() throws Exception {
+        TemplateEngine engine = new TemplateEngine();
+        engine.registerGlobalVariable("posts", posts());
+
+        // A page variable of the same name shadows the global and is queried directly
+        String page = engine.processTemplate("{% for p in posts where category == 'tips' sort title desc %}[{{ p.title }}]{% endfor %}",
+            Map.of("posts", List.of(Map.of("title", "X", "category", "tips"), Map.of("title", "Y", "category", "tips"))),
+            "", Path.of("."));
+        String global = engine.processTemplate("{% for p in posts where category == 'tips' sort title desc %}[{{ p.title }}]{% endfor %}",
+            Map.of(), "", Path.of("."));
+        if (page.equals("[Y][X]") && global.equals("[D][B]")) {
+            pass("testPageCollectionsAreQueried");
+        } else {
+            fail("testPageCollectionsAreQueried", "Got: " + page + " | " + global);
+        }
+    }
+
+    static void testBytecodeMatchesInterpreter() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-query-test");
+        try {
+            Path templatePath = tmpDir.resolve("page.html");
+            Files.writeString(templatePath,
+                "{% for p in posts where category == 'news' sort rank desc %}[{{ p.title }}:{{ title }}]{% endfor %}"
+                + "{% for p in posts sort title desc limit 2 %}({{ p.title }}){% endfor %}"
+                + "{% for p in posts where rank offset 1 %}<{{ p.title }}>{% endfor %}");
+
+            TemplateEngine interpreted = new TemplateEngine();
+            TemplateEngine compiled = new TemplateEngine();
+            compiled.setBytecodeThreshold(0);
+            for (TemplateEngine engine : List.of(interpreted, compiled)) {
+                engine.registerGlobalVariable("posts", posts());
+            }
+            String expected = interpreted.processTemplateFile(templatePath, Map.of("title", "T"), "", tmpDir);
+            String actual = compiled.processTemplateFile(templatePath, Map.of("title", "T"), "", tmpDir);
+            if (expected.equals("[A:T][C:T][E:T](E)(D)<B><C><D>") && actual.equals(expected)) {
+                pass("testBytecodeMatchesInterpreter");
+            } else {
+                fail("testBytecodeMatchesInterpreter", "Got: " + expected + " / " + actual);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    /**
+     * Five posts; E has no rank, and ranks are compared as numbers (10 after 9)
+     */
+    static List<Map<String, Object>> posts() {
+        List<Map<String, Object>> posts = new ArrayList<>();
+        posts.add(Map.of("title", "A", "category", "news", "rank", 2));
+        posts.add(Map.of("title", "B", "category", "tips", "rank", 10));
+        posts.add(Map.of("title", "C", "category", "news", "rank", 1));
+        posts.add(Map.of("title", "D", "category", "tips", "rank", 9));
+        posts.add(Map.of("title", "E", "category", "news"));
+        return posts;
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
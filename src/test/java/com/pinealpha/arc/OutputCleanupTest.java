@@ -0,0 +1,198 @@
+// ABOUTME: Verifies that outputs of earlier builds which a build no longer produces are removed from site/
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.OutputCleanupTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+public class OutputCleanupTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testRenamedAndDeletedContentIsRemoved();
+        testUnchangedOutputsAreKept();
+        testOnlyFilesInsideTheSiteAreRemoved();
+        testFailedBuildOutputsAreNotCarriedOver();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testRenamedAndDeletedContentIsRemoved() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-cleanup-test");
+        try {
+            createSite(tmpDir);
+            Path site = tmpDir.resolve("site");
+            Files.writeString(site.resolve("CNAME"), "example.com");
+            generate(tmpDir);
+
+            // Rename one post and drop the only post with the "old" tag
+            Path posts = tmpDir.resolve("app/posts");
+            Files.move(posts.resolve("second.md"), posts.resolve("renamed.md"));
+            Files.delete(posts.resolve("tagged.md"));
+            Files.delete(tmpDir.resolve("app/assets/img/logo.svg"));
+            int removed = generate(tmpDir);
+
+            List<String> wrong = new ArrayList<>();
+            for (String gone : List.of("posts/second.html", "posts/tagged.html", "tags/old.html",
+                    "assets/img/logo.svg", "assets/img")) {
+                if (Files.exists(site.resolve(gone))) {
+                    wrong.add("still there: " + gone);
+                }
+            }
+            for (String kept : List.of("posts/first.html", "posts/renamed.html", "tags/java.html",
+                    "assets/css/style.css", "feed.xml", "CNAME")) {
+                if (!Files.exists(site.resolve(kept))) {
+                    wrong.add("missing: " + kept);
+                }
+            }
+            if (wrong.isEmpty() && removed == 4) {
+                pass("testRenamedAndDeletedContentIsRemoved");
+            } else {
+                fail("testRenamedAndDeletedContentIsRemoved", "Removed " + removed + ": " + wrong);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testUnchangedOutputsAreKept() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-cleanup-test");
+        try {
+            createSite(tmpDir);
+            generate(tmpDir);
+            // Pages skipped by the build cache and assets that weren't copied again still count as outputs
+            int secondRemoved = generate(tmpDir);
+            int thirdRemoved = generate(tmpDir);
+            Path site = tmpDir.resolve("site");
+            if (secondRemoved == 0 && thirdRemoved == 0 && Files.exists(site.resolve("posts/first.html"))
+                    && Files.exists(site.resolve("assets/img/logo.svg"))) {
+                pass("testUnchangedOutputsAreKept");
+            } else {
+                fail("testUnchangedOutputsAreKept", "Removed " + secondRemoved + " then " + thirdRemoved);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testOnlyFilesInsideTheSiteAreRemoved() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-cleanup-test");
+        try {
+            createSite(tmpDir);
+            generate(tmpDir);
+            Path outside = tmpDir.resolve("notes.txt");
+            Files.writeString(outside, "keep me");
+            Path manifest = tmpDir.resolve(".arc-cache/outputs.json");
+            Files.writeString(manifest, Files.readString(manifest).replace("\"feed.xml\"", "\"feed.xml\", \"../notes.txt\""));
+            generate(tmpDir);
+            if (Files.exists(outside)) {
+                pass("testOnlyFilesInsideTheSiteAreRemoved");
+            } else {
+                fail("testOnlyFilesInsideTheSiteAreRemoved", "Deleted a file outside the site");
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testFailedBuildOutputsAreNotCarriedOver() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-cleanup-test");
+        try {
+            createSite(tmpDir);
+            Path config = tmpDir.resolve("app/site.config");
+            String workingConfig = Files.readString(config);
+            Arc arc = new Arc(tmpDir);
+            arc.generate();
+
+            // Archives are generated after the pages, so this build writes extra.html and then fails
+            Path extra = tmpDir.resolve("app/posts/extra.md");
+            Files.writeString(extra, "---\ntitle: Extra\ndate: 2026-01-04\ntype: post\ntemplate: post.html\n---\nFour\n");
+            Files.writeString(config, workingConfig.replace("tag_template", "archive_template: missing.html\ntag_template"));
+            boolean threw = false;
+            try {
+                arc.generate();
+            } catch (IOException e) {
+                threw = true;
+            }
+            boolean written = Files.exists(tmpDir.resolve("site/posts/extra.html"));
+
+            Files.delete(extra);
+            Files.writeString(config, workingConfig);
+            arc.generate();
+            if (threw && written && !Files.exists(tmpDir.resolve("site/posts/extra.html"))
+                    && Files.exists(tmpDir.resolve("site/posts/first.html"))) {
+                pass("testFailedBuildOutputsAreNotCarriedOver");
+            } else {
+                fail("testFailedBuildOutputsAreNotCarriedOver", "Threw: " + threw + ", written: " + written
+                    + ", still there: " + Files.exists(tmpDir.resolve("site/posts/extra.html")));
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static void createSite(Path tmpDir) throws IOException {
+        Path app = tmpDir.resolve("app");
+        Files.createDirectories(app.resolve("posts"));
+        Files.createDirectories(app.resolve("templates"));
+        Files.createDirectories(app.resolve("assets/css"));
+        Files.createDirectories(app.resolve("assets/img"));
+        Files.createDirectories(tmpDir.resolve("site"));
+        Files.writeString(app.resolve("templates/post.html"), "<h1>{{ title }}</h1>{{ content }}");
+        Files.writeString(app.resolve("templates/tag.html"), "{{ term.name }}");
+        Files.writeString(app.resolve("posts/first.md"),
+            "---\ntitle: First\ndate: 2026-01-01\ntype: post\ntemplate: post.html\ntags: java\n---\nOne\n");
+        Files.writeString(app.resolve("posts/second.md"),
+            "---\ntitle: Second\ndate: 2026-01-02\ntype: post\ntemplate: post.html\n---\nTwo\n");
+        Files.writeString(app.resolve("posts/tagged.md"),
+            "---\ntitle: Tagged\ndate: 2026-01-03\ntype: post\ntemplate: post.html\ntags: old\n---\nThree\n");
+        Files.writeString(app.resolve("assets/css/style.css"), "body {}");
+        Files.writeString(app.resolve("assets/img/logo.svg"), "<svg/>");
+        Files.writeString(app.resolve("site.config"),
+            "---\ntitle: Test\nurl: https://example.com\ntag_template: tag.html\n---\n");
+    }
+
+    /**
+     * The steps of Arc.generate(), for a site in a temporary directory
+     * @return The number of stale files removed
+     */
+    static int generate(Path tmpDir) throws IOException {
+        Path app = tmpDir.resolve("app");
+        Path site = tmpDir.resolve("site");
+        FileProcessor fileProcessor = new FileProcessor();
+        fileProcessor.copyAssets(app, site);
+        fileProcessor.copyRootFiles(app, site);
+        PageProcessor processor = new PageProcessor(new FrontmatterParser(), fileProcessor, new TemplateEngine(),
+            new RssGenerator(fileProcessor));
+        processor.processAllContent(app, site);
+        return OutputManifest.load(BuildCache.directoryFor(app), site).update(fileProcessor.takeOutputs());
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
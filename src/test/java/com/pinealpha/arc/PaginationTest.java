@@ -0,0 +1,182 @@
+// ABOUTME: Verifies that paginate frontmatter splits a collection across page/N.html index pages
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.PaginationTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PaginationTest {
+
+    private static int failures = 0;
+
+    private static final String LIST_TEMPLATE =
+        "{{ paginator.page }}/{{ paginator.total_pages }}:"
+        + "{% for p in paginator.items %}[{{ p.title }}]{% endfor %}"
+        + "{% if paginator.prev %}<{{ paginator.prev }}{% endif %}"
+        + "{% if paginator.next %}>{{ paginator.next }}{% endif %}";
+
+    public static void main(String[] args) throws Exception {
+        testIndexPageIsSplitIntoPages();
+        testNonIndexPageGetsOwnPageDirectory();
+        testUnknownCollectionFailsBuild();
+        testEachPageHasItsOwnUrlAndOneBodyLoad();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testIndexPageIsSplitIntoPages() throws Exception {
+        Path tmpDir = createTestSite(5, "index.md", "paginate: posts\nper_page: 2\n");
+        try {
+            buildSite(tmpDir);
+
+            String first = Files.readString(tmpDir.resolve("site/index.html"));
+            String second = Files.readString(tmpDir.resolve("site/page/2.html"));
+            String third = Files.readString(tmpDir.resolve("site/page/3.html"));
+            boolean ok = first.equals("1/3:[Post 5][Post 4]>/page/2.html")
+                && second.equals("2/3:[Post 3][Post 2]</index.html>/page/3.html")
+                && third.equals("3/3:[Post 1]</page/2.html")
+                && !Files.exists(tmpDir.resolve("site/page/4.html"));
+            if (ok) {
+                pass("testIndexPageIsSplitIntoPages");
+            } else {
+                fail("testIndexPageIsSplitIntoPages", "Got: " + first + " | " + second + " | " + third);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testNonIndexPageGetsOwnPageDirectory() throws Exception {
+        Path tmpDir = createTestSite(3, "archive.md", "paginate: posts\nper_page: 2\n");
+        try {
+            buildSite(tmpDir);
+
+            String first = Files.readString(tmpDir.resolve("site/archive.html"));
+            String second = Files.readString(tmpDir.resolve("site/archive/page/2.html"));
+            if (first.equals("1/2:[Post 3][Post 2]>/archive/page/2.html")
+                    && second.equals("2/2:[Post 1]</archive.html")) {
+                pass("testNonIndexPageGetsOwnPageDirectory");
+            } else {
+                fail("testNonIndexPageGetsOwnPageDirectory", "Got: " + first + " | " + second);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testUnknownCollectionFailsBuild() throws Exception {
+        Path tmpDir = createTestSite(1, "index.md", "paginate: nothing\n");
+        try {
+            buildSite(tmpDir);
+            fail("testUnknownCollectionFailsBuild", "Expected the build to fail");
+        } catch (IllegalArgumentException e) {
+            if (e.getMessage().contains("index.md") && e.getMessage().contains("nothing")) {
+                pass("testUnknownCollectionFailsBuild");
+            } else {
+                fail("testUnknownCollectionFailsBuild", "Unexpected message: " + e.getMessage());
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testEachPageHasItsOwnUrlAndOneBodyLoad() throws Exception {
+        Path tmpDir = createTestSite(5, "index.md", "paginate: posts\nper_page: 2\n");
+        try {
+            Files.writeString(tmpDir.resolve("app/templates/list.html"), "{{ url }}:{{ title }}:{{ content }}");
+            Files.writeString(tmpDir.resolve("app/pages/index.md"),
+                "---\ntitle: List\ntype: page\ntemplate: list.html\npaginate: posts\nper_page: 2\n---\nIntro\n");
+            // Streaming builds load a body on every lookup, so this counts lookups of the page's body
+            Files.writeString(tmpDir.resolve("app/site.config"), "---\nstreaming: true\nincremental: false\n---\n");
+            AtomicInteger bodyLoads = new AtomicInteger();
+            FrontmatterParser parser = new FrontmatterParser() {
+                @Override
+                public String extractContent(String content) {
+                    if (content.contains("Intro")) {
+                        bodyLoads.incrementAndGet();
+                    }
+                    return super.extractContent(content);
+                }
+            };
+            FileProcessor fileProcessor = new FileProcessor();
+            PageProcessor processor = new PageProcessor(parser, fileProcessor, new TemplateEngine(),
+                new RssGenerator(fileProcessor));
+            processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+
+            String first = Files.readString(tmpDir.resolve("site/index.html"));
+            String second = Files.readString(tmpDir.resolve("site/page/2.html"));
+            String third = Files.readString(tmpDir.resolve("site/page/3.html"));
+            if (first.equals("/index.html:List:<p>Intro</p>\n")
+                    && second.equals("/page/2.html:List:<p>Intro</p>\n")
+                    && third.equals("/page/3.html:List:<p>Intro</p>\n")
+                    && bodyLoads.get() == 1) {
+                pass("testEachPageHasItsOwnUrlAndOneBodyLoad");
+            } else {
+                fail("testEachPageHasItsOwnUrlAndOneBodyLoad", bodyLoads + " loads, got: "
+                    + first + " | " + second + " | " + third);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static Path createTestSite(int postCount, String pageName, String pageFrontmatter) throws IOException {
+        Path tmpDir = Files.createTempDirectory("arc-pagination-test");
+        Path postsDir = tmpDir.resolve("app/posts");
+        Path pagesDir = tmpDir.resolve("app/pages");
+        Path templatesDir = tmpDir.resolve("app/templates");
+        Files.createDirectories(postsDir);
+        Files.createDirectories(pagesDir);
+        Files.createDirectories(templatesDir);
+        Files.createDirectories(tmpDir.resolve("site"));
+
+        Files.writeString(templatesDir.resolve("post.html"), "{{ content }}");
+        Files.writeString(templatesDir.resolve("list.html"), LIST_TEMPLATE);
+
+        for (int i = 1; i <= postCount; i++) {
+            Files.writeString(postsDir.resolve("post-" + i + ".md"), String.format(
+                "---\ntitle: Post %d\ndate: 2026-01-%02d\ntype: post\ntemplate: post.html\n---\nbody\n", i, i));
+        }
+        Files.writeString(pagesDir.resolve(pageName),
+            "---\ntitle: List\ntype: page\ntemplate: list.html\n" + pageFrontmatter + "---\n");
+
+        return tmpDir;
+    }
+
+    static void buildSite(Path tmpDir) throws IOException {
+        FrontmatterParser parser = new FrontmatterParser();
+        FileProcessor fileProcessor = new FileProcessor();
+        TemplateEngine templateEngine = new TemplateEngine();
+        RssGenerator rssGenerator = new RssGenerator(fileProcessor);
+        PageProcessor processor = new PageProcessor(parser, fileProcessor, templateEngine, rssGenerator);
+        processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,158 @@
+// ABOUTME: Verifies that parallel builds generate the same site as sequential builds
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.ParallelBuildTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+public class ParallelBuildTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testParallelBuildMatchesSequentialBuild();
+        testSiteConfigEnablesParallelBuild();
+        testParallelBuildReportsFailures();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testParallelBuildMatchesSequentialBuild() throws Exception {
+        Path sequential = createTestSite(60, "");
+        Path parallel = createTestSite(60, "");
+        try {
+            buildSite(sequential, 1);
+            buildSite(parallel, 8);
+
+            Map<String, String> expected = readSite(sequential);
+            Map<String, String> actual = readSite(parallel);
+            if (expected.size() == 61 && expected.equals(actual)) {
+                pass("testParallelBuildMatchesSequentialBuild");
+            } else {
+                fail("testParallelBuildMatchesSequentialBuild",
+                    "Sequential build wrote " + expected.keySet() + ", parallel build wrote " + actual.keySet());
+            }
+        } finally {
+            deleteRecursive(sequential);
+            deleteRecursive(parallel);
+        }
+    }
+
+    static void testSiteConfigEnablesParallelBuild() throws Exception {
+        Path sequential = createTestSite(20, "");
+        Path configured = createTestSite(20, "parallel: true\nthreads: 4\n");
+        try {
+            buildSite(sequential, 1);
+            buildSite(configured, 1);
+
+            if (readSite(sequential).equals(readSite(configured))) {
+                pass("testSiteConfigEnablesParallelBuild");
+            } else {
+                fail("testSiteConfigEnablesParallelBuild", "Configured parallel build differed from sequential build");
+            }
+        } finally {
+            deleteRecursive(sequential);
+            deleteRecursive(configured);
+        }
+    }
+
+    static void testParallelBuildReportsFailures() throws Exception {
+        Path tmpDir = createTestSite(10, "");
+        try {
+            Files.writeString(tmpDir.resolve("app/posts/broken.md"), "---\ntitle: Broken\ntype: post\n---\nbody\n");
+            buildSite(tmpDir, 4);
+            fail("testParallelBuildReportsFailures", "Expected the build to fail");
+        } catch (IllegalArgumentException e) {
+            if (e.getMessage().contains("broken.md")) {
+                pass("testParallelBuildReportsFailures");
+            } else {
+                fail("testParallelBuildReportsFailures", "Unexpected message: " + e.getMessage());
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static Path createTestSite(int postCount, String siteConfig) throws IOException {
+        Path tmpDir = Files.createTempDirectory("arc-parallel-test");
+        Path postsDir = tmpDir.resolve("app/posts");
+        Path pagesDir = tmpDir.resolve("app/pages");
+        Path templatesDir = tmpDir.resolve("app/templates");
+        Files.createDirectories(postsDir);
+        Files.createDirectories(pagesDir);
+        Files.createDirectories(templatesDir);
+        Files.createDirectories(tmpDir.resolve("site"));
+
+        Files.writeString(templatesDir.resolve("post.html"),
+            "<h1>{{ title }}</h1>{{ content }}{% include \"nav.html\" %}");
+        Files.writeString(templatesDir.resolve("nav.html"),
+            "{% for p in posts limit 5 %}<a href=\"{{ p.url }}\">{{ p.title }}</a>{% endfor %}{{ latest_post.title }}");
+        Files.writeString(templatesDir.resolve("home.html"),
+            "{% for p in posts %}[{{ p.formatted_date }} {{ p.title }}]{% endfor %}");
+
+        for (int i = 1; i <= postCount; i++) {
+            Files.writeString(postsDir.resolve("post-" + i + ".md"), String.format(
+                "---\ntitle: Post %d\ndate: 2026-%02d-%02d\ntype: post\ntemplate: post.html\n---\n# Post %d\n\nSome *markdown* %d\n",
+                i, i % 12 + 1, i % 28 + 1, i, i));
+        }
+        Files.writeString(pagesDir.resolve("index.md"), "---\ntitle: Home\ntype: page\ntemplate: home.html\n---\n");
+        if (!siteConfig.isEmpty()) {
+            Files.writeString(tmpDir.resolve("app/site.config"), "---\n" + siteConfig + "---\n");
+        }
+
+        return tmpDir;
+    }
+
+    static void buildSite(Path tmpDir, int threads) throws IOException {
+        FrontmatterParser parser = new FrontmatterParser();
+        FileProcessor fileProcessor = new FileProcessor();
+        TemplateEngine templateEngine = new TemplateEngine();
+        RssGenerator rssGenerator = new RssGenerator(fileProcessor);
+        PageProcessor processor = new PageProcessor(parser, fileProcessor, templateEngine, rssGenerator);
+        processor.setThreads(threads);
+        processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+    }
+
+    /**
+     * Read every generated file except the RSS feed, whose build date differs between builds
+     */
+    static Map<String, String> readSite(Path tmpDir) throws IOException {
+        Path siteDir = tmpDir.resolve("site");
+        Map<String, String> files = new TreeMap<>();
+        try (var paths = Files.walk(siteDir)) {
+            for (Path path : paths.filter(Files::isRegularFile).toList()) {
+                if (!path.getFileName().toString().equals(Constants.RSS_FEED_FILE)) {
+                    files.put(siteDir.relativize(path).toString(), Files.readString(path));
+                }
+            }
+        }
+        return files;
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,225 @@
+// ABOUTME: Verifies the .gz copies written next to generated pages, feeds and text assets
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.PrecompressTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+public class PrecompressTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testCompressesTextOutput();
+        testOnlyChangedFilesAreCompressed();
+        testMinimumSizeAndDisabledBuilds();
+        testUnchangedRebuildCompressesNothing();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testCompressesTextOutput() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-gzip-test");
+        try {
+            createSite(tmpDir, "gzip: true\ngzip_min_size: 100\n");
+            build(tmpDir);
+
+            Path site = tmpDir.resolve("site");
+            List<String> wrong = new ArrayList<>();
+            for (String name : List.of("posts/long.html", "feed.xml", "assets/css/style.css")) {
+                Path file = site.resolve(name);
+                if (!Files.exists(gzipOf(file)) || !gunzip(gzipOf(file)).equals(Files.readString(file))) {
+                    wrong.add("missing or wrong: " + name);
+                }
+            }
+            for (String name : List.of("posts/short.html", "assets/logo.png")) {
+                if (Files.exists(gzipOf(site.resolve(name)))) {
+                    wrong.add("unexpected: " + name + ".gz");
+                }
+            }
+            if (wrong.isEmpty()) {
+                pass("testCompressesTextOutput");
+            } else {
+                fail("testCompressesTextOutput", "Got: " + wrong);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testOnlyChangedFilesAreCompressed() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-gzip-test");
+        try {
+            createSite(tmpDir, "gzip: true\ngzip_min_size: 100\n");
+            build(tmpDir);
+
+            // Mark the existing .gz files, keeping their times: files compressed again lose the mark
+            Path site = tmpDir.resolve("site");
+            List<String> names = List.of("posts/long.html", "posts/other.html", "assets/css/style.css");
+            for (String name : names) {
+                Path gzip = gzipOf(site.resolve(name));
+                FileTime time = Files.getLastModifiedTime(gzip);
+                Files.writeString(gzip, "marked");
+                Files.setLastModifiedTime(gzip, time);
+            }
+            Path post = tmpDir.resolve("app/posts/long.md");
+            Files.writeString(post, Files.readString(post).replace("Lorem", "Edited"));
+            Files.setLastModifiedTime(post, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            build(tmpDir);
+
+            String edited = gunzip(gzipOf(site.resolve("posts/long.html")));
+            if (edited.contains("Edited") && edited.equals(Files.readString(site.resolve("posts/long.html")))
+                    && Files.readString(gzipOf(site.resolve("posts/other.html"))).equals("marked")
+                    && Files.readString(gzipOf(site.resolve("assets/css/style.css"))).equals("marked")) {
+                pass("testOnlyChangedFilesAreCompressed");
+            } else {
+                fail("testOnlyChangedFilesAreCompressed", "Got: " + edited);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testMinimumSizeAndDisabledBuilds() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-gzip-test");
+        try {
+            createSite(tmpDir, "");
+            build(tmpDir);
+            Path site = tmpDir.resolve("site");
+            boolean noneWhenDisabled = !Files.exists(gzipOf(site.resolve("assets/css/style.css")))
+                && !Files.exists(gzipOf(site.resolve("posts/long.html")));
+
+            // Turning compression on also compresses assets that were copied before
+            writeConfig(tmpDir, "gzip: true\ngzip_min_size: 100\ngzip_level: 1\n");
+            build(tmpDir);
+            boolean assetCompressed = Files.exists(gzipOf(site.resolve("assets/css/style.css")));
+
+            // A page that shrinks below the minimum size loses its .gz
+            Path post = tmpDir.resolve("app/posts/long.md");
+            Files.writeString(post, "---\ntitle: Long\ndate: 2026-01-02\ntype: post\ntemplate: post.html\n---\nShort now\n");
+            Files.setLastModifiedTime(post, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            build(tmpDir);
+            if (noneWhenDisabled && assetCompressed && !Files.exists(gzipOf(site.resolve("posts/long.html")))) {
+                pass("testMinimumSizeAndDisabledBuilds");
+            } else {
+                fail("testMinimumSizeAndDisabledBuilds", "Disabled: " + noneWhenDisabled
+                    + ", asset: " + assetCompressed);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testUnchangedRebuildCompressesNothing() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-gzip-test");
+        try {
+            createSite(tmpDir, "gzip: true\ngzip_min_size: 10\narchive_template: archive.html\n");
+            Files.writeString(tmpDir.resolve("app/templates/archive.html"),
+                "<html>{% for p in archive.items %}{{ p.title }} {% endfor %}</html>");
+            build(tmpDir);
+
+            // Archives and the feed are written on every build, but their content is the same
+            List<Path> gzips;
+            try (var files = Files.walk(tmpDir.resolve("site"))) {
+                gzips = files.filter(file -> file.toString().endsWith(".gz")).toList();
+            }
+            for (Path gzip : gzips) {
+                FileTime time = Files.getLastModifiedTime(gzip);
+                Files.writeString(gzip, "marked");
+                Files.setLastModifiedTime(gzip, time);
+            }
+            build(tmpDir);
+
+            List<String> compressed = new ArrayList<>();
+            for (Path gzip : gzips) {
+                if (!new String(Files.readAllBytes(gzip), StandardCharsets.ISO_8859_1).equals("marked")) {
+                    compressed.add(tmpDir.resolve("site").relativize(gzip).toString());
+                }
+            }
+            Path site = tmpDir.resolve("site");
+            if (compressed.isEmpty() && gzips.contains(gzipOf(site.resolve("feed.xml")))
+                    && gzips.contains(gzipOf(site.resolve("posts/2026/index.html")))) {
+                pass("testUnchangedRebuildCompressesNothing");
+            } else {
+                fail("testUnchangedRebuildCompressesNothing", "Compressed again: " + compressed + " of " + gzips);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static void createSite(Path tmpDir, String config) throws IOException {
+        Path app = tmpDir.resolve("app");
+        Files.createDirectories(app.resolve("posts"));
+        Files.createDirectories(app.resolve("templates"));
+        Files.createDirectories(app.resolve("assets/css"));
+        Files.writeString(app.resolve("templates/post.html"), "<html><body>{{ content }}</body></html>");
+        String lorem = "Lorem ipsum dolor sit amet, consectetur adipiscing elit. ".repeat(20);
+        Files.writeString(app.resolve("posts/long.md"),
+            "---\ntitle: Long\ndate: 2026-01-02\ntype: post\ntemplate: post.html\n---\n" + lorem + "\n");
+        Files.writeString(app.resolve("posts/other.md"),
+            "---\ntitle: Other\ndate: 2026-01-03\ntype: post\ntemplate: post.html\n---\n" + lorem + "\n");
+        Files.writeString(app.resolve("posts/short.md"),
+            "---\ntitle: Short\ndate: 2026-01-01\ntype: post\ntemplate: post.html\n---\nHi\n");
+        Files.writeString(app.resolve("assets/css/style.css"), "body { margin: 0; padding: 0; }\n".repeat(10));
+        Files.write(app.resolve("assets/logo.png"), new byte[4096]);
+        writeConfig(tmpDir, config);
+    }
+
+    static void writeConfig(Path tmpDir, String config) throws IOException {
+        Files.writeString(tmpDir.resolve("app/site.config"),
+            "---\ntitle: Test\nurl: https://example.com\n" + config + "---\n");
+    }
+
+    static void build(Path tmpDir) throws IOException {
+        Path app = tmpDir.resolve("app");
+        Path site = tmpDir.resolve("site");
+        FileProcessor fileProcessor = new FileProcessor();
+        fileProcessor.createDirectory(site);
+        fileProcessor.copyAssets(app, site);
+        PageProcessor processor = new PageProcessor(new FrontmatterParser(), fileProcessor, new TemplateEngine(),
+            new RssGenerator(fileProcessor));
+        processor.processAllContent(app, site);
+    }
+
+    static Path gzipOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".gz");
+    }
+
+    static String gunzip(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,199 @@
+// ABOUTME: Verifies atomic publishing: staged builds, the site link swap, shared unchanged files and failed builds
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.SitePublisherTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+public class SitePublisherTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testStagedBuildIsPublished();
+        testOldGenerationsAreDeleted();
+        testFailedBuildLeavesSitePublished();
+        testStagedBuildsReuseFrontmatter();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testStagedBuildIsPublished() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-publish-test");
+        try {
+            createSite(tmpDir);
+            Path site = tmpDir.resolve("site");
+            // An existing plain site directory becomes the first generation
+            new Arc(tmpDir).generate();
+            Files.writeString(site.resolve("CNAME"), "example.com");
+            Path first = site.toRealPath();
+
+            Arc arc = new Arc(tmpDir);
+            arc.enableAtomicPublishing();
+            arc.generate();
+            Path second = site.toRealPath();
+
+            Path post = tmpDir.resolve("app/posts/first.md");
+            Files.writeString(post, Files.readString(post).replace("One", "Edited"));
+            Files.setLastModifiedTime(post, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            arc.generate();
+            Path third = site.toRealPath();
+
+            // The previous generation is untouched; unchanged files are shared with it
+            if (Files.isSymbolicLink(site) && !first.equals(second) && !second.equals(third)
+                    && Files.readString(second.resolve("posts/first.html")).contains("One")
+                    && Files.readString(third.resolve("posts/first.html")).contains("Edited")
+                    && Files.isSameFile(second.resolve("posts/second.html"), third.resolve("posts/second.html"))
+                    && Files.isSameFile(second.resolve("assets/style.css"), third.resolve("assets/style.css"))
+                    && Files.readString(site.resolve("CNAME")).equals("example.com")) {
+                pass("testStagedBuildIsPublished");
+            } else {
+                fail("testStagedBuildIsPublished", "Generations: " + first + ", " + second + ", " + third);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testOldGenerationsAreDeleted() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-publish-test");
+        try {
+            createSite(tmpDir);
+            Arc arc = new Arc(tmpDir);
+            arc.enableAtomicPublishing();
+            for (int i = 0; i < 4; i++) {
+                arc.generate();
+            }
+            List<String> generations;
+            try (var entries = Files.list(tmpDir.resolve(".site-generations"))) {
+                generations = entries.map(entry -> entry.getFileName().toString()).sorted().toList();
+            }
+            Path published = tmpDir.resolve("site").toRealPath();
+            if (generations.equals(List.of("3", "4")) && published.getFileName().toString().equals("4")
+                    && Files.exists(published.resolve("posts/first.html"))) {
+                pass("testOldGenerationsAreDeleted");
+            } else {
+                fail("testOldGenerationsAreDeleted", "Got: " + generations + " -> " + published);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testFailedBuildLeavesSitePublished() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-publish-test");
+        try {
+            createSite(tmpDir);
+            Arc arc = new Arc(tmpDir);
+            arc.enableAtomicPublishing();
+            arc.generate();
+            Path published = tmpDir.resolve("site").toRealPath();
+
+            Files.writeString(tmpDir.resolve("app/posts/broken.md"),
+                "---\ntitle: Broken\ndate: 2026-01-05\ntype: post\ntemplate: missing.html\n---\nBody\n");
+            boolean threw = false;
+            try {
+                arc.generate();
+            } catch (IOException e) {
+                threw = true;
+            }
+            List<String> generations;
+            try (var entries = Files.list(tmpDir.resolve(".site-generations"))) {
+                generations = entries.map(entry -> entry.getFileName().toString()).toList();
+            }
+
+            // Once fixed, the next build still publishes everything
+            Files.delete(tmpDir.resolve("app/posts/broken.md"));
+            arc.generate();
+            Path next = tmpDir.resolve("site").toRealPath();
+            if (threw && !next.equals(published)
+                    && generations.equals(List.of(published.getFileName().toString()))
+                    && Files.exists(next.resolve("posts/first.html")) && !Files.exists(next.resolve("posts/broken.html"))) {
+                pass("testFailedBuildLeavesSitePublished");
+            } else {
+                fail("testFailedBuildLeavesSitePublished", "Threw: " + threw + ", generations: " + generations);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testStagedBuildsReuseFrontmatter() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-publish-test");
+        try {
+            createSite(tmpDir);
+            Path app = tmpDir.resolve("app");
+            List<Path> reads = Collections.synchronizedList(new ArrayList<>());
+            FrontmatterParser parser = new FrontmatterParser() {
+                @Override
+                public String readFrontmatter(Path file) throws IOException {
+                    reads.add(file);
+                    return super.readFrontmatter(file);
+                }
+            };
+            FileProcessor fileProcessor = new FileProcessor();
+            PageProcessor processor = new PageProcessor(parser, fileProcessor, new TemplateEngine(),
+                new RssGenerator(fileProcessor));
+            // Each watch rebuild with --atomic writes into a new generation directory
+            processor.processAllContent(app, tmpDir.resolve(".site-generations/1"));
+            int firstBuild = reads.size();
+            Path post = app.resolve("posts/first.md");
+            Files.writeString(post, Files.readString(post).replace("One", "Edited"));
+            Files.setLastModifiedTime(post, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            reads.clear();
+            Path second = tmpDir.resolve(".site-generations/2");
+            processor.processAllContent(app, second);
+
+            if (firstBuild == 2 && reads.equals(List.of(post))
+                    && Files.readString(second.resolve("posts/first.html")).contains("Edited")) {
+                pass("testStagedBuildsReuseFrontmatter");
+            } else {
+                fail("testStagedBuildsReuseFrontmatter", "Read " + firstBuild + " then " + reads);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static void createSite(Path tmpDir) throws IOException {
+        Path app = tmpDir.resolve("app");
+        Files.createDirectories(app.resolve("posts"));
+        Files.createDirectories(app.resolve("templates"));
+        Files.createDirectories(app.resolve("assets"));
+        Files.writeString(app.resolve("templates/post.html"), "<h1>{{ title }}</h1>{{ content }}");
+        Files.writeString(app.resolve("posts/first.md"),
+            "---\ntitle: First\ndate: 2026-01-01\ntype: post\ntemplate: post.html\n---\nOne\n");
+        Files.writeString(app.resolve("posts/second.md"),
+            "---\ntitle: Second\ndate: 2026-01-02\ntype: post\ntemplate: post.html\n---\nTwo\n");
+        Files.writeString(app.resolve("assets/style.css"), "body {}");
+        Files.writeString(app.resolve("site.config"), "---\ntitle: Test\nurl: https://example.com\n---\n");
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
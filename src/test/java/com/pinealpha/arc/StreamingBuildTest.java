@@ -0,0 +1,245 @@
+// ABOUTME: Verifies that streaming builds match regular builds and don't keep markdown bodies
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.StreamingBuildTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class StreamingBuildTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testStreamingParallelBuildMatchesRegularBuild();
+        testStreamingItemsReloadBodies();
+        testTasksInFlightAreBounded();
+        testLargeSiteBuildsInSmallHeap();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testStreamingParallelBuildMatchesRegularBuild() throws Exception {
+        Path regular = createTestSite(40, "");
+        Path streaming = createTestSite(40, "streaming: true\nthreads: 3\nincremental: false\n");
+        try {
+            buildSite(regular);
+            buildSite(streaming);
+
+            List<String> differences = new ArrayList<>();
+            Path regularSite = regular.resolve("site");
+            Path streamingSite = streaming.resolve("site");
+            try (var files = Files.walk(regularSite)) {
+                for (Path file : files.filter(Files::isRegularFile).toList()) {
+                    Path other = streamingSite.resolve(regularSite.relativize(file));
+                    if (file.endsWith("feed.xml")) {
+                        continue;
+                    }
+                    if (!Files.exists(other) || !Files.readString(file).equals(Files.readString(other))) {
+                        differences.add(regularSite.relativize(file).toString());
+                    }
+                }
+            }
+            long count;
+            try (var files = Files.walk(streamingSite)) {
+                count = files.filter(Files::isRegularFile).count();
+            }
+            // 40 posts, the index and the feed
+            if (differences.isEmpty() && count == 42) {
+                pass("testStreamingParallelBuildMatchesRegularBuild");
+            } else {
+                fail("testStreamingParallelBuildMatchesRegularBuild", count + " files, differing: " + differences);
+            }
+        } finally {
+            deleteRecursive(regular);
+            deleteRecursive(streaming);
+        }
+    }
+
+    static void testStreamingItemsReloadBodies() throws Exception {
+        AtomicInteger reads = new AtomicInteger();
+        ContentMetadata.BodyLoader loader = new ContentMetadata.BodyLoader() {
+            @Override
+            public String readMarkdown(Path source) {
+                reads.incrementAndGet();
+                return "body";
+            }
+
+            @Override
+            public String render(Path source, Supplier<String> markdown) {
+                return "<p>" + markdown.get() + "</p>";
+            }
+        };
+        ContentMetadata retained = new ContentMetadata(Path.of("a.md"), Map.of(), loader, true);
+        retained.get(ContentMetadata.RENDERED_CONTENT_KEY);
+        retained.get(ContentMetadata.RENDERED_CONTENT_KEY);
+        int retainedReads = reads.getAndSet(0);
+
+        ContentMetadata streamed = new ContentMetadata(Path.of("a.md"), Map.of(), loader, false);
+        streamed.get(ContentMetadata.RENDERED_CONTENT_KEY);
+        streamed.get(ContentMetadata.RENDERED_CONTENT_KEY);
+        int streamedReads = reads.get();
+
+        if (retainedReads == 1 && streamedReads == 2) {
+            pass("testStreamingItemsReloadBodies");
+        } else {
+            fail("testStreamingItemsReloadBodies", "Reads: retained " + retainedReads + ", streamed " + streamedReads);
+        }
+    }
+
+    static void testTasksInFlightAreBounded() throws Exception {
+        int parallelism = 3;
+        int window = parallelism * Constants.TASKS_PER_THREAD;
+        List<Integer> inputs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            inputs.add(i);
+        }
+        // The first task holds back the producer, which only takes results in order: every
+        // task queued meanwhile is still in flight, so the tasks started show how many there are
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Integer> results;
+        try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+            Thread releaser = new Thread(() -> {
+                try {
+                    long deadline = System.currentTimeMillis() + 5000;
+                    while (started.get() < window && System.currentTimeMillis() < deadline) {
+                        Thread.sleep(10);
+                    }
+                    // Give a producer that ignored the window time to queue more
+                    Thread.sleep(200);
+                    maxInFlight.set(started.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                release.countDown();
+            });
+            releaser.start();
+            results = PageProcessor.forEachInOrder(pool, inputs, input -> {
+                started.incrementAndGet();
+                if (input == 0) {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return input * 2;
+            });
+            releaser.join();
+        }
+
+        List<Integer> expected = inputs.stream().map(input -> input * 2).toList();
+        if (maxInFlight.get() == window && results.equals(expected)) {
+            pass("testTasksInFlightAreBounded");
+        } else {
+            fail("testTasksInFlightAreBounded", maxInFlight + " tasks in flight, window " + window
+                + ", results in order: " + results.equals(expected));
+        }
+    }
+
+    static void testLargeSiteBuildsInSmallHeap() throws Exception {
+        // 96 bodies of 1 MB each are twice the heap the build is given
+        Path tmpDir = createTestSite(0, "streaming: true\nthreads: 2\nincremental: false\n");
+        try {
+            String paragraph = "Some *body* text that is long enough to make the page big. ".repeat(16) + "\n\n";
+            String body = paragraph.repeat(1024 * 1024 / paragraph.length());
+            for (int i = 1; i <= 96; i++) {
+                Files.writeString(tmpDir.resolve("app/posts/post-" + i + ".md"), String.format(
+                    "---\ntitle: Post %d\ndate: 2026-01-%02d\ntype: post\ntemplate: post.html\n---\n", i, 1 + i % 28)
+                    + body);
+            }
+            Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+            Process build = new ProcessBuilder(java.toString(), "-Xmx48m",
+                    "-cp", System.getProperty("java.class.path"), Arc.class.getName())
+                .directory(tmpDir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(tmpDir.resolve("build.log").toFile())
+                .start();
+            boolean finished = build.waitFor(5, TimeUnit.MINUTES);
+            if (!finished) {
+                build.destroyForcibly();
+            }
+
+            long pages;
+            try (var files = Files.list(tmpDir.resolve("site/posts"))) {
+                pages = files.filter(file -> file.toString().endsWith(".html")).count();
+            }
+            if (finished && build.exitValue() == 0 && pages == 96) {
+                pass("testLargeSiteBuildsInSmallHeap");
+            } else {
+                List<String> log = Files.readAllLines(tmpDir.resolve("build.log"));
+                fail("testLargeSiteBuildsInSmallHeap", pages + " pages, build log ends: "
+                    + log.subList(Math.max(0, log.size() - 5), log.size()));
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static Path createTestSite(int postCount, String siteConfig) throws IOException {
+        Path tmpDir = Files.createTempDirectory("arc-streaming-test");
+        Path postsDir = tmpDir.resolve("app/posts");
+        Path pagesDir = tmpDir.resolve("app/pages");
+        Path templatesDir = tmpDir.resolve("app/templates");
+        Files.createDirectories(postsDir);
+        Files.createDirectories(pagesDir);
+        Files.createDirectories(templatesDir);
+        Files.createDirectories(tmpDir.resolve("site"));
+
+        Files.writeString(templatesDir.resolve("post.html"), "<h1>{{ title }}</h1>{{ content }}");
+        Files.writeString(templatesDir.resolve("list.html"),
+            "{% for p in posts limit 5 %}<article>{{ p.rendered_content }}</article>{% endfor %}");
+        for (int i = 1; i <= postCount; i++) {
+            Files.writeString(postsDir.resolve("post-" + i + ".md"), String.format(
+                "---\ntitle: Post %d\ndate: 2026-01-%02d\ntype: post\ntemplate: post.html\n---\n# Post %d\n\nBody *%d*\n",
+                i, 1 + i % 28, i, i));
+        }
+        Files.writeString(pagesDir.resolve("index.md"), "---\ntitle: Home\ntype: page\ntemplate: list.html\n---\n");
+        if (!siteConfig.isEmpty()) {
+            Files.writeString(tmpDir.resolve("app/site.config"), "---\n" + siteConfig + "---\n");
+        }
+        return tmpDir;
+    }
+
+    static void buildSite(Path tmpDir) throws IOException {
+        FrontmatterParser parser = new FrontmatterParser();
+        FileProcessor fileProcessor = new FileProcessor();
+        TemplateEngine templateEngine = new TemplateEngine();
+        RssGenerator rssGenerator = new RssGenerator(fileProcessor);
+        PageProcessor processor = new PageProcessor(parser, fileProcessor, templateEngine, rssGenerator);
+        processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
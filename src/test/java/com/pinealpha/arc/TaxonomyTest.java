@@ -0,0 +1,146 @@
+// ABOUTME: Verifies tag and category parsing, the tags/categories collections and the generated term pages
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.TaxonomyTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+public class TaxonomyTest {
+
+    private static int failures = 0;
+
+    private static final String TAG_TEMPLATE =
+        "{{ term.name }} ({{ term.count }}){% for p in term.items %}[{{ p.title }}]{% endfor %}";
+
+    public static void main(String[] args) throws Exception {
+        testParseList();
+        testTagPagesAndCollections();
+        testRebuildPicksUpChangedTags();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testParseList() {
+        List<String> inline = FrontmatterParser.parseList("[java, \"static sites\", java]");
+        List<String> commas = FrontmatterParser.parseList(" java ,performance,, ");
+        List<String> missing = FrontmatterParser.parseList(null);
+        if (inline.equals(List.of("java", "static sites")) && commas.equals(List.of("java", "performance"))
+                && missing.isEmpty()) {
+            pass("testParseList");
+        } else {
+            fail("testParseList", "Got: " + inline + " " + commas + " " + missing);
+        }
+    }
+
+    static void testTagPagesAndCollections() throws Exception {
+        Path tmpDir = createTestSite();
+        try {
+            buildSite(newProcessor(), tmpDir);
+
+            String java = Files.readString(tmpDir.resolve("site/tags/java.html"));
+            String staticSites = Files.readString(tmpDir.resolve("site/tags/static-sites.html"));
+            String index = Files.readString(tmpDir.resolve("site/index.html"));
+            boolean ok = java.equals("Java (2)[Newer][Older]")
+                && staticSites.equals("static sites (1)[Older]")
+                && index.equals("<java:/tags/java.html:2><static-sites:/tags/static-sites.html:1>(news:1)")
+                && !Files.exists(tmpDir.resolve("site/categories"));
+            if (ok) {
+                pass("testTagPagesAndCollections");
+            } else {
+                fail("testTagPagesAndCollections", "Got: " + java + " | " + staticSites + " | " + index);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testRebuildPicksUpChangedTags() throws Exception {
+        Path tmpDir = createTestSite();
+        try {
+            PageProcessor processor = newProcessor();
+            buildSite(processor, tmpDir);
+
+            // Same processor, as in watch mode: only the edited file is read again
+            writePost(tmpDir.resolve("app/posts"), "older.md", "Older", "2026-01-01", "tags: rust\n");
+            buildSite(processor, tmpDir);
+
+            String java = Files.readString(tmpDir.resolve("site/tags/java.html"));
+            String rust = Files.readString(tmpDir.resolve("site/tags/rust.html"));
+            String index = Files.readString(tmpDir.resolve("site/index.html"));
+            if (java.equals("Java (1)[Newer]") && rust.equals("rust (1)[Older]")
+                    && index.equals("<java:/tags/java.html:1><rust:/tags/rust.html:1>(news:1)")) {
+                pass("testRebuildPicksUpChangedTags");
+            } else {
+                fail("testRebuildPicksUpChangedTags", "Got: " + java + " | " + rust + " | " + index);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static Path createTestSite() throws IOException {
+        Path tmpDir = Files.createTempDirectory("arc-taxonomy-test");
+        Path postsDir = tmpDir.resolve("app/posts");
+        Path pagesDir = tmpDir.resolve("app/pages");
+        Path templatesDir = tmpDir.resolve("app/templates");
+        Files.createDirectories(postsDir);
+        Files.createDirectories(pagesDir);
+        Files.createDirectories(templatesDir);
+        Files.createDirectories(tmpDir.resolve("site"));
+
+        Files.writeString(templatesDir.resolve("post.html"), "{{ content }}");
+        Files.writeString(templatesDir.resolve("tag.html"), TAG_TEMPLATE);
+        Files.writeString(templatesDir.resolve("home.html"),
+            "{% for t in tags %}<{{ t.slug }}:{{ t.url }}:{{ t.count }}>{% endfor %}"
+            + "{% for c in categories %}({{ c.slug }}:{{ c.count }}){% endfor %}");
+        writePost(postsDir, "older.md", "Older", "2026-01-01", "tags: [java, \"static sites\"]\n");
+        writePost(postsDir, "newer.md", "Newer", "2026-02-01", "tags: Java\ncategories: News\n");
+        Files.writeString(pagesDir.resolve("index.md"), "---\ntitle: Home\ntype: page\ntemplate: home.html\n---\n");
+        Files.writeString(tmpDir.resolve("app/site.config"), "---\ntitle: Test\ntag_template: tag.html\n---\n");
+        return tmpDir;
+    }
+
+    static void writePost(Path dir, String name, String title, String date, String extra) throws IOException {
+        Files.writeString(dir.resolve(name), "---\ntitle: " + title + "\ndate: " + date
+            + "\ntype: post\ntemplate: post.html\n" + extra + "---\nbody\n");
+    }
+
+    static PageProcessor newProcessor() {
+        FrontmatterParser parser = new FrontmatterParser();
+        FileProcessor fileProcessor = new FileProcessor();
+        TemplateEngine templateEngine = new TemplateEngine();
+        RssGenerator rssGenerator = new RssGenerator(fileProcessor);
+        return new PageProcessor(parser, fileProcessor, templateEngine, rssGenerator);
+    }
+
+    static void buildSite(PageProcessor processor, Path tmpDir) throws IOException {
+        processor.processAllContent(tmpDir.resolve("app"), tmpDir.resolve("site"));
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,71 @@
+// ABOUTME: Compares interpreted and bytecode-compiled rendering of the example site templates
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.TemplateBenchmark -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.*;
+import java.util.*;
+
+public class TemplateBenchmark {
+
+    private static final int POSTS = 500;
+    private static final int WARMUP_BUILDS = 20;
+    private static final int MEASURED_BUILDS = 50;
+
+    public static void main(String[] args) throws Exception {
+        Path templatesDir = Path.of(args.length > 0 ? args[0] : "src/main/resources/examples/arc-site/app/templates");
+        if (!Files.isDirectory(templatesDir)) {
+            System.err.println("Templates directory not found: " + templatesDir);
+            System.exit(1);
+        }
+
+        List<Map<String, String>> pages = syntheticPosts();
+        double interpreted = benchmark(templatesDir, pages, -1);
+        double compiled = benchmark(templatesDir, pages, 0);
+
+        System.out.printf("Interpreted: %.2f ms per build of %d pages%n", interpreted, pages.size() + 1);
+        System.out.printf("Bytecode:    %.2f ms per build of %d pages%n", compiled, pages.size() + 1);
+        System.out.printf("Speedup:     %.2fx%n", interpreted / compiled);
+    }
+
+    /**
+     * Render the home page and every post once per build
+     * @return Mean milliseconds per build
+     */
+    static double benchmark(Path templatesDir, List<Map<String, String>> pages, int threshold) throws IOException {
+        TemplateEngine engine = new TemplateEngine();
+        engine.setBytecodeThreshold(threshold);
+        engine.registerGlobalVariable("posts", pages);
+
+        Path home = templatesDir.resolve("home.html");
+        Path post = templatesDir.resolve("post.html");
+        Writer sink = Writer.nullWriter();
+        long start = 0;
+        for (int build = 0; build < WARMUP_BUILDS + MEASURED_BUILDS; build++) {
+            if (build == WARMUP_BUILDS) {
+                start = System.nanoTime();
+            }
+            engine.beginBuild();
+            engine.processTemplateFile(home, Map.of("title", "Home"), "<p>Welcome</p>", templatesDir, sink);
+            for (Map<String, String> page : pages) {
+                engine.processTemplateFile(post, page, page.get("rendered_content"), templatesDir, sink);
+            }
+        }
+        return (System.nanoTime() - start) / 1e6 / MEASURED_BUILDS;
+    }
+
+    static List<Map<String, String>> syntheticPosts() {
+        List<Map<String, String>> posts = new ArrayList<>();
+        for (int i = 0; i < POSTS; i++) {
+            Map<String, String> post = new HashMap<>();
+            post.put("title", "Post " + i);
+            post.put("date", String.format("2025-%02d-%02d", i % 12 + 1, i % 28 + 1));
+            post.put("url", "/posts/post-" + i + ".html");
+            post.put("description", "Synthetic post number " + i);
+            post.put("rendered_content", "<p>" + "Body of post " + i + ". ".repeat(40) + "</p>");
+            posts.add(post);
+        }
+        return posts;
+    }
+}
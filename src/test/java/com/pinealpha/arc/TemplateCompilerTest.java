@@ -0,0 +1,283 @@
+// ABOUTME: Verifies that templates compile into a node tree that renders like the old regex passes
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.TemplateCompilerTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+public class TemplateCompilerTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testTemplateCompilesIntoNodeTree();
+        testNestedBlocksRender();
+        testUnknownSimpleVariableLeftUntouched();
+        testUnclosedIfRunsToEnd();
+        testTemplateFileIsCachedUntilCleared();
+        testOnlyReferencedVariablesAreResolved();
+        testEditedNestedIncludePickedUpOnNextBuild();
+        testLoopOffsetAndNestedLoops();
+        testGlobalOnlyLoopRenderedOncePerBuild();
+        testBytecodeMatchesInterpreter();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testTemplateCompilesIntoNodeTree() {
+        Template template = new TemplateCompiler().compile(
+            "<h1>{{ title }}</h1>{% for p in posts %}{% if p.date %}{{ p.date }}{% endif %}{% endfor %}{% include \"f.html\" %}",
+            null);
+
+        List<Template.Node> nodes = template.nodes();
+        boolean shapeOk = nodes.size() == 5
+            && nodes.get(0) instanceof Template.Text
+            && nodes.get(1) instanceof Template.Variable v && v.path().equals("title")
+            && nodes.get(3) instanceof Template.For loop && loop.body().get(0) instanceof Template.If
+            && nodes.get(4) instanceof Template.Include include && include.name().equals("f.html");
+        if (shapeOk) {
+            pass("testTemplateCompilesIntoNodeTree");
+        } else {
+            fail("testTemplateCompilesIntoNodeTree", "Unexpected node tree: " + nodes);
+        }
+    }
+
+    static void testNestedBlocksRender() throws Exception {
+        TemplateEngine engine = new TemplateEngine();
+        engine.registerGlobalVariable("posts", List.of(
+            Map.of("title", "A", "date", "2025-01-01"),
+            Map.of("title", "B")
+        ));
+
+        String output = engine.processTemplate(
+            "{% for p in posts %}[{{ p.title }}{% if p.date %}@{{ p.date }}{% endif %}]{% endfor %}",
+            new HashMap<>(), "", Path.of("."));
+
+        if (output.equals("[A@2025-01-01][B]")) {
+            pass("testNestedBlocksRender");
+        } else {
+            fail("testNestedBlocksRender", "Got: " + output);
+        }
+    }
+
+    static void testUnknownSimpleVariableLeftUntouched() throws Exception {
+        TemplateEngine engine = new TemplateEngine();
+        String output = engine.processTemplate("{{ nope }}|{{ nope.deeper }}|{{ title }}",
+            Map.of("title", "T"), "", Path.of("."));
+
+        if (output.equals("{{ nope }}||T")) {
+            pass("testUnknownSimpleVariableLeftUntouched");
+        } else {
+            fail("testUnknownSimpleVariableLeftUntouched", "Got: " + output);
+        }
+    }
+
+    static void testUnclosedIfRunsToEnd() throws Exception {
+        TemplateEngine engine = new TemplateEngine();
+        String shown = engine.processTemplate("a{% if title %}b", Map.of("title", "T"), "", Path.of("."));
+        String hidden = engine.processTemplate("a{% if missing %}b", Map.of("title", "T"), "", Path.of("."));
+
+        if (shown.equals("ab") && hidden.equals("a")) {
+            pass("testUnclosedIfRunsToEnd");
+        } else {
+            fail("testUnclosedIfRunsToEnd", "Got: " + shown + " / " + hidden);
+        }
+    }
+
+    static void testTemplateFileIsCachedUntilCleared() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-compiler-test");
+        try {
+            Path templatePath = tmpDir.resolve("page.html");
+            Files.writeString(templatePath, "v1 {{ content }}");
+
+            TemplateEngine engine = new TemplateEngine();
+            String first = engine.processTemplateFile(templatePath, Map.of(), "x", tmpDir);
+            Files.writeString(templatePath, "v2 {{ content }}");
+            String cached = engine.processTemplateFile(templatePath, Map.of(), "x", tmpDir);
+            engine.clearTemplateCache();
+            String recompiled = engine.processTemplateFile(templatePath, Map.of(), "x", tmpDir);
+
+            if (first.equals("v1 x") && cached.equals("v1 x") && recompiled.equals("v2 x")) {
+                pass("testTemplateFileIsCachedUntilCleared");
+            } else {
+                fail("testTemplateFileIsCachedUntilCleared",
+                    "Got: " + first + " / " + cached + " / " + recompiled);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testOnlyReferencedVariablesAreResolved() throws Exception {
+        Template template = new TemplateCompiler().compile(
+            "{{ title }}{% for p in posts %}{{ p.title }}{{ site.name }}{% endfor %}", null);
+        Set<String> expected = Set.of("title", "posts", "site", "site.name");
+
+        TemplateEngine engine = new TemplateEngine();
+        engine.registerGlobalVariable("huge", new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("unreferenced global was stringified");
+            }
+        });
+
+        try {
+            String output = engine.processTemplate("{{ title }}", Map.of("title", "T"), "", Path.of("."));
+            if (template.variables().equals(expected) && output.equals("T")) {
+                pass("testOnlyReferencedVariablesAreResolved");
+            } else {
+                fail("testOnlyReferencedVariablesAreResolved",
+                    "Got variables " + template.variables() + " and output " + output);
+            }
+        } catch (IllegalStateException e) {
+            fail("testOnlyReferencedVariablesAreResolved", e.getMessage());
+        }
+    }
+
+    static void testEditedNestedIncludePickedUpOnNextBuild() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-compiler-test");
+        try {
+            Path templatePath = tmpDir.resolve("page.html");
+            Files.writeString(templatePath, "[{% include \"outer.html\" %}]");
+            Files.writeString(tmpDir.resolve("outer.html"), "<{% include \"inner.html\" %}>");
+            Path inner = tmpDir.resolve("inner.html");
+            Files.writeString(inner, "{{ title }}");
+
+            TemplateEngine engine = new TemplateEngine();
+            engine.beginBuild();
+            String first = engine.processTemplateFile(templatePath, Map.of("title", "T", "x", "X"), "", tmpDir);
+
+            Files.writeString(inner, "{{ title }}/{{ x }}");
+            Files.setLastModifiedTime(inner, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            engine.beginBuild();
+            String rebuilt = engine.processTemplateFile(templatePath, Map.of("title", "T", "x", "X"), "", tmpDir);
+
+            if (first.equals("[<T>]") && rebuilt.equals("[<T/X>]")) {
+                pass("testEditedNestedIncludePickedUpOnNextBuild");
+            } else {
+                fail("testEditedNestedIncludePickedUpOnNextBuild", "Got: " + first + " / " + rebuilt);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testLoopOffsetAndNestedLoops() throws Exception {
+        TemplateEngine engine = new TemplateEngine();
+        engine.registerGlobalVariable("nums", List.of("1", "2", "3", "4", "5"));
+        engine.registerGlobalVariable("letters", List.of("a", "b"));
+
+        String sliced = engine.processTemplate(
+            "{% for n in nums offset 1 limit 2 %}{{ n }}{% endfor %}|{% for n in nums limit 2 offset 4 %}{{ n }}{% endfor %}",
+            Map.of(), "", Path.of("."));
+        String nested = engine.processTemplate(
+            "{% for n in nums limit 2 %}{% for l in letters %}{{ n }}{{ l }}{{ title }} {% endfor %}{% endfor %}{{ n }}",
+            Map.of("title", "!"), "", Path.of("."));
+
+        if (sliced.equals("23|5") && nested.equals("1a! 1b! 2a! 2b! {{ n }}")) {
+            pass("testLoopOffsetAndNestedLoops");
+        } else {
+            fail("testLoopOffsetAndNestedLoops", "Got: " + sliced + " / " + nested);
+        }
+    }
+
+    static void testGlobalOnlyLoopRenderedOncePerBuild() throws Exception {
+        int[] renders = {0};
+        Object counted = new Object() {
+            @Override
+            public String toString() {
+                renders[0]++;
+                return "x";
+            }
+        };
+
+        TemplateEngine engine = new TemplateEngine();
+        engine.registerGlobalVariable("items", List.of(counted, counted));
+        String template = "{{ title }}:{% for i in items %}{{ i }}{% endfor %}";
+        Path tmpDir = Files.createTempDirectory("arc-compiler-test");
+        try {
+            Path templatePath = tmpDir.resolve("page.html");
+            Files.writeString(templatePath, template);
+            String a = engine.processTemplateFile(templatePath, Map.of("title", "A"), "", tmpDir);
+            String b = engine.processTemplateFile(templatePath, Map.of("title", "B"), "", tmpDir);
+            // A page variable that shadows the global disables the cached output
+            String shadowed = engine.processTemplateFile(templatePath, Map.of("title", "C", "items", "no"), "", tmpDir);
+
+            if (a.equals("A:xx") && b.equals("B:xx") && shadowed.equals("C:") && renders[0] == 2) {
+                pass("testGlobalOnlyLoopRenderedOncePerBuild");
+            } else {
+                fail("testGlobalOnlyLoopRenderedOncePerBuild",
+                    "Got: " + a + " / " + b + " / " + shadowed + " after " + renders[0] + " item renders");
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testBytecodeMatchesInterpreter() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-compiler-test");
+        try {
+            Path templatePath = tmpDir.resolve("page.html");
+            Files.writeString(templatePath,
+                "<h1>{{ title }}</h1>{{ nope }}{{ nope.deeper }}{{ site.name }}"
+                + "{% if type == 'post' %}P{% endif %}{% if missing %}M{% endif %}"
+                + "{% for p in posts offset 1 %}[{{ p.title }}{% for l in letters %}{{ l }}{{ title }}{% endfor %}"
+                + "{% if p.date %}@{{ p.date }}{% endif %}{% include \"item.html\" %}]{% endfor %}"
+                + "{% for l in letters limit 1 %}{{ l }}{% endfor %}{{ content }}");
+            Files.writeString(tmpDir.resolve("item.html"), "({{ p.title }}/{{ title }})");
+
+            Map<String, String> page = Map.of("title", "T", "type", "post");
+            String[] outputs = new String[2];
+            for (int threshold : new int[] {-1, 0}) {
+                TemplateEngine engine = new TemplateEngine();
+                engine.setBytecodeThreshold(threshold);
+                engine.registerGlobalVariable("site.name", "Site");
+                engine.registerGlobalVariable("letters", List.of("a", "b"));
+                engine.registerGlobalVariable("posts", List.of(
+                    Map.of("title", "A"),
+                    Map.of("title", "B", "date", "2025-01-01"),
+                    Map.of("title", "C")
+                ));
+                engine.processTemplateFile(templatePath, page, "body", tmpDir);
+                outputs[threshold + 1] = engine.processTemplateFile(templatePath, page, "body", tmpDir);
+            }
+
+            String expected = "<h1>T</h1>{{ nope }}SiteP[BaTbT@2025-01-01(B/T)][CaTbT(C/T)]abody";
+            if (outputs[0].equals(expected) && outputs[1].equals(expected)) {
+                pass("testBytecodeMatchesInterpreter");
+            } else {
+                fail("testBytecodeMatchesInterpreter", "Got: " + outputs[0] + " / " + outputs[1]);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
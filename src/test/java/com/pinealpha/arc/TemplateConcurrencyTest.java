@@ -0,0 +1,140 @@
+// ABOUTME: Verifies that frozen globals are immutable and that one engine renders correctly from many threads
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.TemplateConcurrencyTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class TemplateConcurrencyTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testFrozenGlobalsAreImmutableSnapshots();
+        testConcurrentRendersMatchSequentialRenders();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    @SuppressWarnings("unchecked")
+    static void testFrozenGlobalsAreImmutableSnapshots() throws Exception {
+        List<Map<String, String>> posts = new ArrayList<>();
+        posts.add(new HashMap<>(Map.of("title", "A")));
+
+        TemplateEngine engine = new TemplateEngine();
+        engine.registerGlobalVariable("posts", posts);
+        engine.freezeGlobals();
+
+        // Changes to the registered objects are not seen until the global is registered again
+        posts.add(new HashMap<>(Map.of("title", "B")));
+        posts.get(0).put("title", "changed");
+        String frozen = engine.processTemplate("{% for p in posts %}{{ p.title }}{% endfor %}", Map.of(), "", Path.of("."));
+
+        boolean listLocked = throwsOnModify(() -> ((List<Object>) engine.getGlobalVariable("posts")).add("x"));
+        boolean mapLocked = throwsOnModify(() ->
+            ((List<Map<String, String>>) engine.getGlobalVariable("posts")).get(0).put("title", "x"));
+
+        engine.registerGlobalVariable("posts", posts);
+        String reregistered = engine.processTemplate("{% for p in posts %}{{ p.title }}{% endfor %}", Map.of(), "", Path.of("."));
+
+        if (frozen.equals("A") && listLocked && mapLocked && reregistered.equals("changedB")) {
+            pass("testFrozenGlobalsAreImmutableSnapshots");
+        } else {
+            fail("testFrozenGlobalsAreImmutableSnapshots",
+                "Got: " + frozen + " / " + reregistered + " locked=" + listLocked + "," + mapLocked);
+        }
+    }
+
+    static void testConcurrentRendersMatchSequentialRenders() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-concurrency-test");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Path templatePath = tmpDir.resolve("page.html");
+            Files.writeString(templatePath,
+                "{% include \"head.html\" %}{{ title }}{% for p in posts limit 3 %}[{{ p.title }}|{{ title }}]{% endfor %}"
+                + "{% for p in posts %}{{ p.title }}{% endfor %}");
+            Files.writeString(tmpDir.resolve("head.html"), "<{{ site_name }}:{{ title }}>");
+
+            List<Map<String, String>> posts = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                posts.add(Map.of("title", "P" + i));
+            }
+
+            Map<Integer, String> expected = new HashMap<>();
+            TemplateEngine sequential = engineWithGlobals(posts, -1);
+            for (int i = 0; i < 200; i++) {
+                expected.put(i, sequential.processTemplateFile(templatePath, Map.of("title", "T" + i), "", tmpDir));
+            }
+
+            boolean ok = true;
+            for (int threshold : new int[] {-1, 10}) {
+                TemplateEngine shared = engineWithGlobals(posts, threshold);
+                shared.beginBuild();
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    int page = i;
+                    results.add(executor.submit(() -> expected.get(page).equals(
+                        shared.processTemplateFile(templatePath, Map.of("title", "T" + page), "", tmpDir))));
+                }
+                for (Future<Boolean> result : results) {
+                    ok &= result.get();
+                }
+            }
+
+            if (ok) {
+                pass("testConcurrentRendersMatchSequentialRenders");
+            } else {
+                fail("testConcurrentRendersMatchSequentialRenders", "Concurrent output differed from sequential output");
+            }
+        } finally {
+            executor.shutdown();
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    // --- helpers ---
+
+    static TemplateEngine engineWithGlobals(List<Map<String, String>> posts, int bytecodeThreshold) {
+        TemplateEngine engine = new TemplateEngine();
+        engine.setBytecodeThreshold(bytecodeThreshold);
+        engine.registerGlobalVariable("posts", posts);
+        engine.registerGlobalVariable("site_name", "Site");
+        engine.freezeGlobals();
+        return engine;
+    }
+
+    static boolean throwsOnModify(Runnable modification) {
+        try {
+            modification.run();
+            return false;
+        } catch (UnsupportedOperationException e) {
+            return true;
+        }
+    }
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
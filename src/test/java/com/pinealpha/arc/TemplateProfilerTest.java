@@ -0,0 +1,109 @@
+// ABOUTME: Verifies that the template profiler attributes renders and output to files and directive sites
+// ABOUTME: Run via: mvn package, then mvn exec:java -Dexec.mainClass=com.pinealpha.arc.TemplateProfilerTest -Dexec.classpathScope=test
+package com.pinealpha.arc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+public class TemplateProfilerTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        testReportListsFilesAndDirectiveSites();
+        testProfilingDoesNotChangeOutput();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    static void testReportListsFilesAndDirectiveSites() throws Exception {
+        Path tmpDir = Files.createTempDirectory("arc-profiler-test");
+        try {
+            Path templatePath = tmpDir.resolve("page.html");
+            Files.writeString(templatePath,
+                "<h1>{{ title }}</h1>\n{% for p in posts limit 2 %}{% include \"item.html\" %}{% endfor %}\n{% if title %}é{% endif %}");
+            Files.writeString(tmpDir.resolve("item.html"), "<li>{{ p }}</li>");
+
+            TemplateEngine engine = new TemplateEngine();
+            engine.enableProfiling();
+            engine.registerGlobalVariable("posts", List.of("a", "b", "c"));
+            engine.processTemplateFile(templatePath, Map.of("title", "T"), "", tmpDir);
+            engine.processTemplateFile(templatePath, Map.of("title", "U"), "", tmpDir);
+            String report = engine.getProfiler().report();
+
+            // The loop only reads globals, so the second page reuses its output without rendering
+            // the include again; the two includes are both from the first page
+            boolean ok = hasRow(report, 2, 68, templatePath.toString())
+                && hasRow(report, 2, 40, templatePath + ":2 {% for p in posts limit 2 %}")
+                && hasRow(report, 2, 20, templatePath + ":2 {% include \"item.html\" %}")
+                && hasRow(report, 2, 20, tmpDir.resolve("item.html").toString())
+                && hasRow(report, 2, 4, templatePath + ":3 {% if title %}");
+            if (ok) {
+                pass("testReportListsFilesAndDirectiveSites");
+            } else {
+                fail("testReportListsFilesAndDirectiveSites", "Unexpected report:\n" + report);
+            }
+        } finally {
+            deleteRecursive(tmpDir);
+        }
+    }
+
+    static void testProfilingDoesNotChangeOutput() throws Exception {
+        String template = "{% for n in nums offset 1 %}[{{ n }}{% if title == 'T' %}!{% endif %}]{% endfor %}{{ content }}";
+        TemplateEngine plain = new TemplateEngine();
+        TemplateEngine profiled = new TemplateEngine();
+        profiled.enableProfiling();
+        for (TemplateEngine engine : List.of(plain, profiled)) {
+            engine.registerGlobalVariable("nums", List.of("1", "2", "3"));
+        }
+
+        String expected = plain.processTemplate(template, Map.of("title", "T"), "x", Path.of("."));
+        String actual = profiled.processTemplate(template, Map.of("title", "T"), "x", Path.of("."));
+        if (expected.equals("[2!][3!]x") && actual.equals(expected)) {
+            pass("testProfilingDoesNotChangeOutput");
+        } else {
+            fail("testProfilingDoesNotChangeOutput", "Got: " + expected + " / " + actual);
+        }
+    }
+
+    /**
+     * Check that the report has a row for a site with the given call count and total bytes
+     */
+    static boolean hasRow(String report, long calls, long bytes, String site) {
+        for (String line : report.split("\n")) {
+            String[] columns = line.trim().split("\\s+", 5);
+            if (columns.length == 5 && columns[4].equals(site)
+                    && columns[2].equals(String.valueOf(calls)) && columns[3].equals(String.valueOf(bytes))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // --- helpers ---
+
+    static void pass(String testName) {
+        System.out.println("PASS: " + testName);
+    }
+
+    static void fail(String testName, String message) {
+        System.err.println("FAIL: " + testName + " - " + message);
+        failures++;
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var entries = Files.list(path)) {
+                for (Path entry : entries.toList()) {
+                    deleteRecursive(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}